@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The batch command: runs a script of gitlet commands, one per line,
+ *  against a single Gitlet, writing the repository state only at the
+ *  end of the script and at lines reading "checkpoint".  After each
+ *  command it prints how long the command took.  A command that fails
+ *  is reported with its line, and the script goes on.
+ *
+ *  Lines are split into words at whitespace.  Single or double quotes
+ *  group words, and a backslash outside single quotes takes the next
+ *  character literally.  Blank lines and lines starting with "#" are
+ *  skipped.
+ */
+class Batch {
+
+    /** Run the script read from IN. */
+    static void run(Reader in) {
+        Gitlet g = new Gitlet();
+        boolean wasDeferring = StateJournal.deferring();
+        StateJournal.defer(true);
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            BufferedReader lines = new BufferedReader(in);
+            for (String line; (line = lines.readLine()) != null;) {
+                List<String> words;
+                try {
+                    words = split(line);
+                } catch (IllegalArgumentException excp) {
+                    System.out.println("batch: " + excp.getMessage() + ": " + line);
+                    continue;
+                }
+                if (words.isEmpty()) {
+                    continue;
+                }
+                long t = System.nanoTime();
+                if (words.size() == 1 && words.get(0).equals("checkpoint")) {
+                    save();
+                } else if (words.get(0).equals("batch")
+                           || words.get(0).equals("daemon")) {
+                    System.out.println("batch: " + words.get(0)
+                                       + " cannot be run in a batch.");
+                    continue;
+                } else {
+                    try {
+                        Main.run(g, words.toArray(new String[0]));
+                    } catch (RuntimeException excp) {
+                        System.out.println("batch: " + excp + ": " + line);
+                        continue;
+                    }
+                }
+                count += 1;
+                System.out.println(String.format("[batch] %.3f ms: %s",
+                    (System.nanoTime() - t) / 1e6, String.join(" ", words)));
+            }
+        } catch (IOException excp) {
+            System.out.println("batch: " + excp.getMessage());
+        } finally {
+            save();
+            StateJournal.defer(wasDeferring);
+        }
+        System.out.println(String.format("[batch] %.3f ms: %d commands",
+            (System.nanoTime() - start) / 1e6, count));
+    }
+
+    /** Write the repository state as it stands. */
+    private static void save() {
+        try {
+            StateJournal.flush();
+            StatIndex.save();
+        } catch (IllegalArgumentException excp) {
+            System.out.println("gitletinfo serialization wrong!");
+        }
+    }
+
+    /** Returns the words of LINE, or an empty list if it is blank or a
+     *  comment. */
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else if (c == '#' && word == null && words.isEmpty()) {
+                break;
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
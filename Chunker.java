@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks, after FastCDC (Xia et
+ *  al., "FastCDC: a Fast and Efficient Content-Defined Chunking Approach
+ *  for Data Deduplication", USENIX ATC 2016).  A chunk ends where a gear
+ *  hash of the bytes before it matches a mask, so boundaries move with
+ *  the contents: an edit changes the chunks around it and leaves the
+ *  rest of a file's chunks as they were.  Chunks are at least MIN_SIZE
+ *  and at most MAX_SIZE bytes.  A stricter mask applies before
+ *  AVG_SIZE and a looser one after it, which draws chunk sizes towards
+ *  AVG_SIZE.
+ *
+ *  The boundaries depend only on the contents, GEAR and the sizes, so
+ *  none of them may change without splitting files differently than
+ *  before, which costs space but not correctness.
+ */
+class Chunker {
+
+    /** Bounds on and the usual size of chunks. */
+    static final int MIN_SIZE = 64 << 10, AVG_SIZE = 256 << 10,
+        MAX_SIZE = 1 << 20;
+
+    /** Masks of the gear hash, in its high bits, which depend on the
+     *  most bytes: two bits more than AVG_SIZE calls for before it, and
+     *  two fewer after. */
+    private static final long MASK_S =
+        -1L << (64 - Integer.numberOfTrailingZeros(AVG_SIZE) - 2);
+    private static final long MASK_L =
+        -1L << (64 - Integer.numberOfTrailingZeros(AVG_SIZE) + 2);
+
+    /** A random value for each byte, from a fixed splitmix64 sequence. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    /** Bytes read and not yet returned: buf[start .. end). */
+    private final byte[] buf = new byte[2 * MAX_SIZE];
+    private int start, end;
+    private boolean eof;
+
+    /** A chunker of the contents of IN. */
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk, or null after the last. */
+    byte[] next() throws IOException {
+        if (end - start < MAX_SIZE && !eof) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+            while (end < buf.length && !eof) {
+                int n = in.read(buf, end, buf.length - end);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    end += n;
+                }
+            }
+        }
+        if (start == end) {
+            return null;
+        }
+        int n = cut(buf, start, end - start);
+        start += n;
+        return Arrays.copyOfRange(buf, start - n, start);
+    }
+
+    /** Returns the length of the chunk that starts the LEN bytes of BUF
+     *  at OFF, all of which are the rest of the contents if there are
+     *  fewer than MAX_SIZE. */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i;
+        for (i = MIN_SIZE; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+}
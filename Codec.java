@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A compression scheme for the objects in the object store.  Each
+ *  stored object records the id of the codec that wrote it, so the codec
+ *  used for new objects can change without affecting old ones.
+ */
+interface Codec {
+
+    /** System property naming the codec used for new objects. */
+    String PROPERTY = "gitlet.codec";
+
+    /** Stores objects as they are. */
+    Codec RAW = new Raw();
+    /** The JDK's Deflate: slower, but the smallest objects. */
+    Codec DEFLATE = new Deflate();
+    /** A byte-oriented LZ77 codec: fast, with less compression. */
+    Codec LZ = new LZCodec();
+
+    /** All codecs, indexed by id. */
+    Codec[] ALL = { RAW, DEFLATE, LZ };
+
+    /** Returns the id recorded with objects written by me. */
+    int id();
+
+    /** Returns the name by which I am chosen. */
+    String name();
+
+    /** Returns a stream that writes the encoding of what is written to it
+     *  to OUT, and closes OUT when it is closed. */
+    OutputStream encode(OutputStream out) throws IOException;
+
+    /** Returns a stream of the decoding of IN, which it closes when it is
+     *  closed. */
+    InputStream decode(InputStream in) throws IOException;
+
+    /** Returns the codec with id ID. */
+    static Codec forId(int id) {
+        if (id < 0 || id >= ALL.length) {
+            throw new IllegalArgumentException("unknown codec " + id);
+        }
+        return ALL[id];
+    }
+
+    /** Returns the codec named by the gitlet.codec property, which is
+     *  Deflate if the property is unset. */
+    static Codec configured() {
+        String name = System.getProperty(PROPERTY, DEFLATE.name());
+        for (Codec c : ALL) {
+            if (c.name().equals(name)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec " + name);
+    }
+
+    /** The identity codec. */
+    final class Raw implements Codec {
+        @Override
+        public int id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    }
+
+    /** Deflate, from java.util.zip. */
+    final class Deflate implements Codec {
+        @Override
+        public int id() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            return new DeflaterOutputStream(out, deflater, 1 << 16) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    deflater.end();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    }
+}
@@ -9,11 +9,20 @@ import java.util.HashMap;
 
 public class Commit implements Serializable {
 
+    //Keeps commits serialized by earlier versions readable
+    private static final long serialVersionUID = -636892491453278152L;
+
     private String parent;
     private HashMap<String, String> filesTracked;
     private String time;
     private String message;
     private String shA1;
+    //The SHA1ID of the root tree of filesTracked; null for commits made
+    // before trees were introduced
+    private String tree;
+    //The SHA1ID of the branch merged in by a merge commit; null for every
+    // other commit
+    private String secondParent;
 
     public Commit() {
         message = "initial commit";
@@ -40,29 +49,45 @@ public class Commit implements Serializable {
 
     }
 
+    //Constructor that rebuilds a commit read back from the commit store
+    Commit(String shA1, String parent, String secondParent, String tree,
+           String time, String message, HashMap<String, String> files) {
+        this.shA1 = shA1;
+        this.tree = tree;
+        this.parent = parent;
+        this.secondParent = secondParent;
+        this.time = time;
+        this.message = message;
+        this.filesTracked = files;
+    }
+
 
 
     public String shaGenerator() {
-        String input = "";
+        StringBuilder input = new StringBuilder();
         if (!filesTracked.isEmpty()) {
             for (String a : filesTracked.keySet()) {
-                input += a;
+                input.append(a);
             }
         }
 
         if (!(parent == null)) {
-            input += parent;
+            input.append(parent);
+        }
+
+        if (!(secondParent == null)) {
+            input.append(secondParent);
         }
 
         if (!(time == null)) {
-            input += time;
+            input.append(time);
         }
 
         if (!(message == null)) {
-            input += message;
+            input.append(message);
         }
 
-        return Utils.sha1(input);
+        return Utils.sha1(input.toString());
     }
 
 
@@ -100,6 +125,14 @@ public class Commit implements Serializable {
         return parent;
     }
 
+    public String getSecondParent() {
+        return secondParent;
+    }
+
+    public String getTree() {
+        return tree;
+    }
+
 
     public void add(File f) {
         ArrayList<Object> newFile = new ArrayList<>();
@@ -130,6 +163,14 @@ public class Commit implements Serializable {
         this.parent = p;
     }
 
+    public void setSecondParent(String p) {
+        this.secondParent = p;
+    }
+
+    public void setTree(String t) {
+        this.tree = t;
+    }
+
     public void setMessage(String m) {
         this.message = m;
     }
@@ -145,6 +186,8 @@ public class Commit implements Serializable {
         a.time = c.time;
         a.message = c.message;
         a.shA1 = c.shA1;
+        a.tree = c.tree;
+        a.secondParent = c.secondParent;
         return a;
     }
 }
@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of decoded commits, by id, through which all commit
+ *  lookups go.  Entries are weighed by an estimate of the memory their
+ *  commits occupy, which is dominated by their maps of tracked files,
+ *  and the least recently used are evicted once the total passes the
+ *  capacity: the value of the gitlet.commitCache property, in megabytes,
+ *  or DEFAULT_MEGABYTES.
+ *
+ *  Commits are immutable once stored, so entries never go stale; callers
+ *  must not change the commits they are given.
+ */
+class CommitCache {
+
+    /** System property giving the capacity in megabytes. */
+    static final String PROPERTY = "gitlet.commitCache";
+    private static final int DEFAULT_MEGABYTES = 64;
+
+    /** Estimated bytes of a commit apart from its files, and of each
+     *  file apart from the characters of its name. */
+    private static final int COMMIT_WEIGHT = 400;
+    private static final int FILE_WEIGHT = 200;
+
+    /** Cached commits, least recently used first. */
+    private static final LinkedHashMap<String, Commit> COMMITS =
+        new LinkedHashMap<>(256, 0.75f, true);
+
+    private static final long CAPACITY =
+        Long.getLong(PROPERTY, DEFAULT_MEGABYTES) << 20;
+
+    /** Total weight of the cached commits. */
+    private static long weight;
+
+    private static long hits, misses, evictions;
+
+    /** Returns the cached commit ID, or null if it is not cached. */
+    static synchronized Commit get(String id) {
+        Commit c = COMMITS.get(id);
+        if (c == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return c;
+    }
+
+    /** Cache C, evicting others as needed. */
+    static synchronized void put(Commit c) {
+        Commit old = COMMITS.put(c.getSHA1(), c);
+        if (old != null) {
+            weight -= weigh(old);
+        }
+        weight += weigh(c);
+        Iterator<Commit> lru = COMMITS.values().iterator();
+        while (weight > CAPACITY && lru.hasNext()) {
+            Commit victim = lru.next();
+            if (victim == c) {
+                break;
+            }
+            lru.remove();
+            weight -= weigh(victim);
+            evictions += 1;
+        }
+    }
+
+    /** Returns the number of lookups that found their commit. */
+    static synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not find their commit. */
+    static synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the number of commits evicted to make room. */
+    static synchronized long evictions() {
+        return evictions;
+    }
+
+    /** Returns the estimated bytes occupied by the cached commits. */
+    static synchronized long weight() {
+        return weight;
+    }
+
+    /** Returns the estimated bytes occupied by C. */
+    private static long weigh(Commit c) {
+        long w = COMMIT_WEIGHT + 2 * c.getMessage().length();
+        for (Map.Entry<String, String> e : c.getFilesTracked().entrySet()) {
+            w += FILE_WEIGHT + 2 * e.getKey().length();
+        }
+        return w;
+    }
+}
@@ -0,0 +1,377 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/** The commit graph, .gitlet/commit-graph: one fixed-width record per
+ *  stored commit, in the order the commits were stored, holding the
+ *  commit's id, its time, the numbers of its parents' records and its
+ *  generation number.  Parents are always stored before their children,
+ *  so a commit's generation, one more than the largest of its parents'
+ *  (or 1 for the initial commit), is known when it is added.  A commit
+ *  with a smaller or equal generation than another can never be its
+ *  descendant, which lets ancestry walks stop early.
+ *
+ *  .gitlet/commit-graph.idx maps ids to record numbers.  Both files are
+ *  derived from the commit store and are rebuilt from it whenever they
+ *  are missing, disagree, or were written in another format.  Together
+ *  they answer questions about the whole history, such as the order in
+ *  which commits were made or whether one is an ancestor of another,
+ *  without reading the commits themselves.
+ */
+class CommitGraph {
+
+    static final File FILE = new File(".gitlet/commit-graph");
+    static final File INDEX = new File(".gitlet/commit-graph.idx");
+
+    private static final int MAGIC = 0x474c4347;
+    private static final int HEADER_SIZE = 8;
+    /** Offsets within a record of the time in seconds, the numbers of
+     *  the first and second parents (-1 for none) and the generation. */
+    private static final int TIME = ObjectId.SIZE;
+    private static final int PARENT1 = TIME + 8;
+    private static final int PARENT2 = PARENT1 + 4;
+    private static final int GENERATION = PARENT2 + 4;
+    /** Width of a record. */
+    private static final int RECORD_SIZE = GENERATION + 4;
+
+    /** Index entries: an id and its record number. */
+    private static final SortedTable NUMBERS =
+        new SortedTable(INDEX, ObjectId.SIZE, ObjectId.SIZE + 4);
+
+    /** The mapped graph. */
+    private static ByteBuffer graph;
+
+    /** Add C, which has just been stored after its parents, to the
+     *  graph, unless it is there already, as loose commits moved into
+     *  the pack are. */
+    static void add(Commit c) {
+        if (graph == null || graph.capacity() != FILE.length()) {
+            graph = Utils.mapContents(FILE);
+        }
+        if (!valid(graph)) {
+            rebuild();
+            return;
+        }
+        if (index(c.getSHA1()) >= 0) {
+            return;
+        }
+        int n = (graph.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        int[] parents = new int[2];
+        int generation = 1;
+        List<String> ids = parents(c);
+        for (int k = 0; k < 2; k += 1) {
+            parents[k] = k < ids.size() ? index(ids.get(k)) : -1;
+            if (parents[k] >= 0) {
+                generation = Math.max(generation, generation(parents[k]) + 1);
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(FILE, true)) {
+            out.write(record(c, parents, generation));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ArrayList<byte[]> entry = new ArrayList<>();
+        entry.add(number(c.getSHA1(), n));
+        NUMBERS.append(entry);
+    }
+
+    /** Returns the number of commits in the graph. */
+    static int size() {
+        return (mapped().capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /** Returns the id of commit number I. */
+    static String id(int i) {
+        byte[] id = new byte[ObjectId.SIZE];
+        mapped().get(HEADER_SIZE + i * RECORD_SIZE, id);
+        return ObjectId.toHex(id, 0, ObjectId.SIZE);
+    }
+
+    /** Returns the time of commit number I, in seconds. */
+    static long time(int i) {
+        return mapped().getLong(HEADER_SIZE + i * RECORD_SIZE + TIME);
+    }
+
+    /** Returns the number of parent K (0 or 1) of commit number I, or -1
+     *  if it has no such parent. */
+    static int parent(int i, int k) {
+        return mapped().getInt(HEADER_SIZE + i * RECORD_SIZE
+                               + (k == 0 ? PARENT1 : PARENT2));
+    }
+
+    /** Returns the generation number of commit number I. */
+    static int generation(int i) {
+        return mapped().getInt(HEADER_SIZE + i * RECORD_SIZE + GENERATION);
+    }
+
+    /** Returns the number of the commit whose id is ID, or -1 if it is
+     *  not in the graph. */
+    static int index(String id) {
+        mapped();
+        byte[] entry = NUMBERS.find(ObjectId.fromHex(id).toBytes());
+        return entry == null ? -1 : ByteBuffer.wrap(entry).getInt(ObjectId.SIZE);
+    }
+
+    /** Returns true iff the commit whose id is A is the commit whose id
+     *  is B or one of its ancestors.  The walk back from B skips every
+     *  commit whose generation is no greater than A's, since A cannot
+     *  be among their ancestors. */
+    static boolean isAncestor(String a, String b) {
+        int target = index(a), start = index(b);
+        if (target < 0 || start < 0) {
+            return false;
+        }
+        int floor = generation(target);
+        BitSet seen = new BitSet();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        seen.set(start);
+        while (!queue.isEmpty()) {
+            int i = queue.remove();
+            if (i == target) {
+                return true;
+            }
+            for (int k = 0; k < 2; k += 1) {
+                int p = parent(i, k);
+                if (p >= 0 && !seen.get(p)
+                    && (p == target || generation(p) > floor)) {
+                    seen.set(p);
+                    queue.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the numbers of all commits, newest first; commits made in
+     *  the same second are ordered latest stored first. */
+    static int[] byTime() {
+        int n = size();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            keys[i] = time(i) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = (int) keys[n - 1 - i];
+        }
+        return order;
+    }
+
+    /** Returns the time TIME, as commits record it, in seconds.  Times are
+     *  read as UTC, so that converting them is unaffected by the local
+     *  time zone. */
+    static long seconds(String time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(time).getTime() / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
+    /** Returns the id of a lowest common ancestor of the commits whose
+     *  ids are A and B: a common ancestor (which may be A or B itself) of
+     *  which no other common ancestor is a descendant.  Returns null if
+     *  either is not in the graph or they have no common ancestor.
+     *
+     *  Commits reached from A and from B are marked as such and visited
+     *  highest generation first, newest first among equals, so every
+     *  commit is visited after all its descendants that the walk
+     *  reaches.  The first commit found to be reached from both is
+     *  therefore a lowest common ancestor, and the walk stops there,
+     *  having visited only commits that are not common ancestors plus
+     *  that one: its cost grows with how far A and B have diverged, not
+     *  with the length of the history. */
+    static String mergeBase(String a, String b) {
+        int start1 = index(a), start2 = index(b);
+        if (start1 < 0 || start2 < 0) {
+            return null;
+        }
+        final int fromA = 1, fromB = 2;
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((i, j) -> {
+            int cmp = Integer.compare(generation(j), generation(i));
+            if (cmp == 0) {
+                cmp = Long.compare(time(j), time(i));
+            }
+            return cmp != 0 ? cmp : Integer.compare(j, i);
+        });
+        marks.merge(start1, fromA, (x, y) -> x | y);
+        marks.merge(start2, fromB, (x, y) -> x | y);
+        queue.add(start1);
+        if (start2 != start1) {
+            queue.add(start2);
+        }
+        HashMap<Integer, Integer> expanded = new HashMap<>();
+        while (!queue.isEmpty()) {
+            int i = queue.remove();
+            int mark = marks.get(i);
+            if (mark == (fromA | fromB)) {
+                return id(i);
+            }
+            if (expanded.getOrDefault(i, 0) == mark) {
+                continue;
+            }
+            expanded.put(i, mark);
+            for (int k = 0; k < 2; k += 1) {
+                int p = parent(i, k);
+                if (p < 0) {
+                    continue;
+                }
+                int old = marks.getOrDefault(p, 0);
+                if ((old | mark) != old) {
+                    marks.put(p, old | mark);
+                    queue.add(p);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the ids of the parents of C, first parent first. */
+    private static List<String> parents(Commit c) {
+        ArrayList<String> result = new ArrayList<>();
+        if (c.getParent() != null) {
+            result.add(c.getParent());
+        }
+        if (c.getSecondParent() != null) {
+            result.add(c.getSecondParent());
+        }
+        return result;
+    }
+
+    /** Returns the record of C, whose parents have the numbers PARENTS
+     *  and whose generation is GENERATION. */
+    private static byte[] record(Commit c, int[] parents, int generation) {
+        return ByteBuffer.allocate(RECORD_SIZE)
+            .put(ObjectId.fromHex(c.getSHA1()).toBytes())
+            .putLong(seconds(c.getTime()))
+            .putInt(parents[0]).putInt(parents[1])
+            .putInt(generation).array();
+    }
+
+    /** Returns the index entry giving ID the record number I. */
+    private static byte[] number(String id, int i) {
+        return ByteBuffer.allocate(ObjectId.SIZE + 4)
+            .put(ObjectId.fromHex(id).toBytes()).putInt(i).array();
+    }
+
+    /** Returns the graph, mapped afresh if it has changed, after
+     *  rebuilding it if it is missing, in another format, or out of
+     *  step with its index. */
+    private static ByteBuffer mapped() {
+        if (graph == null || graph.capacity() != FILE.length()) {
+            graph = Utils.mapContents(FILE);
+            if (!valid(graph)) {
+                rebuild();
+                graph = Utils.mapContents(FILE);
+            }
+        }
+        return graph;
+    }
+
+    /** Returns true iff BUF holds a graph in the current format whose
+     *  index covers every record. */
+    private static boolean valid(ByteBuffer buf) {
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC
+            || buf.getInt(4) != RECORD_SIZE) {
+            return false;
+        }
+        try {
+            return NUMBERS.size()
+                == (buf.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Write the graph and its index afresh from the commit store.
+     *  Commits are numbered parents first, whatever order the store
+     *  holds them in. */
+    private static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        ArrayList<String> stored = new ArrayList<>();
+        CommitStore.scanHeaders(c -> {
+            commits.put(c.getSHA1(), c);
+            stored.add(c.getSHA1());
+        });
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[] generations = new int[stored.size()];
+        ArrayList<byte[]> entries = new ArrayList<>();
+        File tmp = new File(FILE.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(RECORD_SIZE);
+                ArrayDeque<String> pending = new ArrayDeque<>();
+                for (String id : stored) {
+                    pending.push(id);
+                    while (!pending.isEmpty()) {
+                        String top = pending.peek();
+                        if (numbers.containsKey(top)) {
+                            pending.pop();
+                            continue;
+                        }
+                        Commit c = commits.get(top);
+                        List<String> ids = parents(c);
+                        boolean ready = true;
+                        for (String p : ids) {
+                            if (commits.containsKey(p)
+                                && !numbers.containsKey(p)) {
+                                pending.push(p);
+                                ready = false;
+                            }
+                        }
+                        if (!ready) {
+                            continue;
+                        }
+                        pending.pop();
+                        int[] parents = {-1, -1};
+                        int generation = 1;
+                        for (int k = 0; k < ids.size() && k < 2; k += 1) {
+                            Integer p = numbers.get(ids.get(k));
+                            if (p != null) {
+                                parents[k] = p;
+                                generation = Math.max(generation,
+                                                      generations[p] + 1);
+                            }
+                        }
+                        int n = numbers.size();
+                        numbers.put(top, n);
+                        generations[n] = generation;
+                        out.write(record(c, parents, generation));
+                        entries.add(number(top, n));
+                    }
+                }
+            }
+            NUMBERS.rewrite(entries);
+            Files.move(tmp.toPath(), FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        graph = null;
+    }
+}
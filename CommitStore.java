@@ -0,0 +1,482 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/** Storage for commits.  Commits are appended, in a compact binary
+ *  encoding, to the single pack file .gitlet/commits.pack, and
+ *  .gitlet/commits.idx maps their 20-byte ids to offsets in the pack.
+ *  Most commits store only the files that changed since their parent,
+ *  and the rest take their files from their root tree, which shares
+ *  every unchanged subtree with those before it, so the pack grows with
+ *  the size of each change rather than with the number of files
+ *  tracked.
+ *  Commits written as one Java-serialized file per commit under
+ *  .gitlet/commits by older versions are still readable.
+ */
+class CommitStore {
+
+    static final File PACK = new File(".gitlet/commits.pack");
+    static final File INDEX = new File(".gitlet/commits.idx");
+    static final File LOOSE = new File(".gitlet/commits");
+
+    private static final int PACK_MAGIC = 0x474c4350;
+    private static final int PACK_HEADER_SIZE = 4;
+    private static final int ENTRY_SIZE = ObjectId.SIZE + 8;
+
+    /** Version of the encoding of commits written to the pack, and the
+     *  earlier versions, which store snapshots as lists of all their files
+     *  and, before that, had no second parents, that are still read. */
+    private static final byte VERSION = 5;
+    private static final byte VERSION_WITH_FILE_SNAPSHOTS = 4;
+    private static final byte VERSION_WITHOUT_MERGES = 3;
+
+    /** A commit's files are stored as a snapshot at least once in every
+     *  SNAPSHOT_INTERVAL commits along a line of parents, and otherwise as
+     *  the changes from its parent's, so that reading any commit decodes
+     *  at most that many records.  A snapshot is the commit's root tree
+     *  when it has one, and a list of all its files otherwise. */
+    private static final int SNAPSHOT_INTERVAL = 16;
+
+    /** Index from commit id to pack offset. */
+    private static final SortedTable IDS =
+        new SortedTable(INDEX, ObjectId.SIZE, ENTRY_SIZE);
+
+    /** Distance between the starts of the windows in which the pack is
+     *  mapped.  Each window spans twice that, so that a record no longer
+     *  than WINDOW lies whole in the window it starts in; longer records
+     *  are mapped on their own. */
+    private static final long WINDOW = 1L << 28;
+
+    /** The windows of the pack mapped so far, by their offsets. */
+    private static final HashMap<Long, ByteBuffer> windows = new HashMap<>();
+
+    /** Store C, unless a commit with its id is already stored. */
+    static void put(Commit c) {
+        if (offsetOf(c.getSHA1()) >= 0) {
+            return;
+        }
+        long begin = Stats.begin();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            encode(c, out);
+            out.close();
+
+            long offset = PACK.length();
+            try (DataOutputStream p = new DataOutputStream(
+                     new BufferedOutputStream(
+                         new FileOutputStream(PACK, true)))) {
+                if (offset == 0) {
+                    p.writeInt(PACK_MAGIC);
+                    offset = PACK_HEADER_SIZE;
+                }
+                p.writeInt(bytes.size());
+                bytes.writeTo(p);
+            }
+            Stats.wrote(4 + bytes.size());
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.put(ObjectId.fromHex(c.getSHA1()).toBytes());
+            entry.putLong(offset);
+            IDS.append(Collections.singletonList(entry.array()));
+            CommitCache.put(c);
+            MessageIndex.add(c);
+            CommitGraph.add(c);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.WRITE_COMMIT, begin);
+        }
+    }
+
+    /** Returns the commit whose id is ID, or null if there is none.
+     *  Commits are served from the CommitCache when they are there. */
+    static Commit get(String id) {
+        Commit c = CommitCache.get(id);
+        if (c != null) {
+            return c;
+        }
+        long begin = Stats.begin();
+        long offset = offsetOf(id);
+        c = offset >= 0 ? decode(offset, null) : readLoose(id);
+        if (c != null) {
+            CommitCache.put(c);
+        }
+        Stats.end(Stats.READ_COMMIT, begin);
+        return c;
+    }
+
+    /** Returns true iff a commit with id ID is stored. */
+    static boolean contains(String id) {
+        return offsetOf(id) >= 0 || new File(LOOSE, id + ".ser").isFile();
+    }
+
+    /** Returns the ids of up to LIMIT stored commits that start with
+     *  PREFIX, a possibly abbreviated id, in order.  The pack's index is
+     *  binary-searched for the prefix, so this takes O(log n) time. */
+    static List<String> matching(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > 2 * ObjectId.SIZE) {
+            return result;
+        }
+        byte[] key = new byte[(prefix.length() + 1) / 2];
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int digit = Character.digit(prefix.charAt(i), 16);
+            if (digit < 0) {
+                return result;
+            }
+            key[i / 2] |= digit << (i % 2 == 0 ? 4 : 0);
+        }
+        for (byte[] rec : IDS.findPrefix(key, 4 * prefix.length(), limit)) {
+            result.add(ObjectId.toHex(rec, 0, ObjectId.SIZE));
+        }
+        for (String name : looseNames()) {
+            String id = name.substring(0, name.length() - ".ser".length());
+            if (result.size() < limit && id.startsWith(prefix)
+                && !result.contains(id)) {
+                result.add(id);
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Returns the ids of all stored commits. */
+    static List<String> ids() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0, n = IDS.size(); i < n; i += 1) {
+            result.add(ObjectId.toHex(IDS.record(i), 0, ObjectId.SIZE));
+        }
+        for (String name : looseNames()) {
+            result.add(name.substring(0, name.length() - ".ser".length()));
+        }
+        return result;
+    }
+
+    /** Move the commits left under .gitlet/commits by older versions of
+     *  gitlet into the pack, parents first, and return how many were
+     *  moved. */
+    static int repack() {
+        List<String> names = looseNames();
+        for (String name : names) {
+            putWithParents(readLoose(name.substring(0, name.length()
+                                                    - ".ser".length())));
+        }
+        for (String name : names) {
+            new File(LOOSE, name).delete();
+        }
+        LOOSE.delete();
+        return names.size();
+    }
+
+    /** Store C and any of its ancestors that are not in the pack yet,
+     *  oldest first. */
+    private static void putWithParents(Commit c) {
+        ArrayList<Commit> line = new ArrayList<>();
+        while (c != null && offsetOf(c.getSHA1()) < 0) {
+            line.add(c);
+            c = c.getParent() == null ? null : readLoose(c.getParent());
+        }
+        for (int i = line.size() - 1; i >= 0; i -= 1) {
+            put(line.get(i));
+        }
+    }
+
+    /** Returns the commit whose id is ID, or null if there is none, with
+     *  an empty map of files.  This reads no more than the commit's own
+     *  record, and is meant for printing commits. */
+    static Commit header(String id) {
+        Commit c = CommitCache.get(id);
+        if (c != null) {
+            return c;
+        }
+        long offset = offsetOf(id);
+        if (offset < 0) {
+            return readLoose(id);
+        }
+        return decodeHeader(record(offset));
+    }
+
+    /** Apply VISIT to every stored commit, as for scan, but with empty
+     *  maps of files, which are not read. */
+    static void scanHeaders(Consumer<Commit> visit) {
+        long end = PACK.length();
+        long offset = PACK_HEADER_SIZE;
+        while (offset + 4 <= end) {
+            ByteBuffer in = record(offset);
+            visit.accept(decodeHeader(in));
+            offset += 4 + in.capacity();
+        }
+        for (String name : looseNames()) {
+            visit.accept(readLoose(name.substring(0, name.length()
+                                                  - ".ser".length())));
+        }
+    }
+
+    /** Apply VISIT to every stored commit, reading the pack
+     *  sequentially.  VISIT must not change the commits' files. */
+    static void scan(Consumer<Commit> visit) {
+        HashMap<Long, HashMap<String, String>> recent =
+            new LinkedHashMap<Long, HashMap<String, String>>() {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Long, HashMap<String, String>> eldest) {
+                    return size() > SNAPSHOT_INTERVAL;
+                }
+            };
+        long end = PACK.length();
+        long offset = PACK_HEADER_SIZE;
+        while (offset + 4 <= end) {
+            ByteBuffer in = record(offset);
+            Commit c = decode(in, offset, recent);
+            recent.put(offset, c.getFilesTracked());
+            visit.accept(c);
+            offset += 4 + in.capacity();
+        }
+        for (String name : looseNames()) {
+            visit.accept(readLoose(name.substring(0, name.length()
+                                                  - ".ser".length())));
+        }
+    }
+
+    /** Write C to OUT in pack encoding.  C's files are written as the
+     *  changes from its parent's, unless the parent is not in the pack
+     *  or SNAPSHOT_INTERVAL - 1 commits in a row have already been written
+     *  that way, in which case they are left to C's tree, or written in
+     *  full if C has none. */
+    private static void encode(Commit c, DataOutputStream out)
+        throws IOException {
+        long parentOffset = c.getParent() == null ? -1
+            : offsetOf(c.getParent());
+        int depth = 0;
+        if (parentOffset >= 0) {
+            depth = (depthAt(record(parentOffset)) + 1)
+                % SNAPSHOT_INTERVAL;
+        }
+        out.writeByte(VERSION);
+        out.writeByte(depth);
+        out.write(ObjectId.fromHex(c.getSHA1()).toBytes());
+        writeOptionalID(out, c.getParent());
+        writeOptionalID(out, c.getSecondParent());
+        writeOptionalID(out, c.getTree());
+        Utils.writeString(out, c.getTime());
+        byte[] message = c.getMessage().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(message.length);
+        out.write(message);
+        HashMap<String, String> files = c.getFilesTracked();
+        if (depth == 0) {
+            if (c.getTree() == null) {
+                writeFiles(out, files, files.keySet());
+            }
+            return;
+        }
+        HashMap<String, String> base = get(c.getParent()).getFilesTracked();
+        ArrayList<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            if (!e.getValue().equals(base.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        writeFiles(out, files, changed);
+        ArrayList<String> removed = new ArrayList<>();
+        for (String name : base.keySet()) {
+            if (!files.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        out.writeInt(removed.size());
+        for (String name : removed) {
+            Utils.writeString(out, name);
+        }
+    }
+
+    /** Write the NAMES in FILES, with their ids, to OUT. */
+    private static void writeFiles(DataOutputStream out,
+                                   HashMap<String, String> files,
+                                   Collection<String> names)
+        throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            Utils.writeString(out, name);
+            out.write(ObjectId.fromHex(files.get(name)).toBytes());
+        }
+    }
+
+    /** Returns the commit whose record starts at OFFSET in the pack.  If
+     *  its files are stored as changes from its parent's, the parent's
+     *  files are taken from RECENT, a map from offsets to files that may
+     *  be null, when they are there and are otherwise looked up in
+     *  turn. */
+    private static Commit decode(long offset,
+                                 Map<Long, HashMap<String, String>> recent) {
+        return decode(record(offset), offset, recent);
+    }
+
+    /** Returns the commit whose record, which starts at OFFSET in the
+     *  pack, is REC, looking up its parent's files as for
+     *  decode(OFFSET, RECENT). */
+    private static Commit decode(ByteBuffer rec, long offset,
+                                 Map<Long, HashMap<String, String>> recent) {
+        Stats.decoded();
+        ByteBuffer in = rec.duplicate();
+        Commit c = decodeHeader(in);
+        int depth = depthAt(rec);
+        HashMap<String, String> files = c.getFilesTracked();
+        if (depth == 0 && rec.get(0) == VERSION && c.getTree() != null) {
+            Tree.flatten(c.getTree(), "", files);
+            return c;
+        }
+        if (depth > 0) {
+            long parentOffset = offsetOf(c.getParent());
+            HashMap<String, String> base =
+                recent == null ? null : recent.get(parentOffset);
+            if (base == null) {
+                base = get(c.getParent()).getFilesTracked();
+            }
+            files.putAll(base);
+        }
+        byte[] fileID = new byte[ObjectId.SIZE];
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            String name = Utils.readString(in);
+            in.get(fileID);
+            files.put(name, ObjectId.toHex(fileID, 0, ObjectId.SIZE));
+        }
+        if (depth > 0) {
+            for (int n = in.getInt(); n > 0; n -= 1) {
+                files.remove(Utils.readString(in));
+            }
+        }
+        return c;
+    }
+
+    /** Returns the commit whose record is at the position of IN, but with
+     *  no files, leaving IN at the start of its files. */
+    private static Commit decodeHeader(ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION && version != VERSION_WITH_FILE_SNAPSHOTS
+            && version != VERSION_WITHOUT_MERGES) {
+            throw new IllegalArgumentException("unknown commit encoding");
+        }
+        in.get();
+        byte[] id = new byte[ObjectId.SIZE];
+        in.get(id);
+        String parent = readOptionalID(in);
+        String secondParent =
+            version == VERSION_WITHOUT_MERGES ? null : readOptionalID(in);
+        String tree = readOptionalID(in);
+        String time = Utils.readString(in);
+        byte[] message = new byte[in.getInt()];
+        in.get(message);
+        return new Commit(ObjectId.toHex(id, 0, ObjectId.SIZE), parent,
+                          secondParent, tree, time,
+                          new String(message, StandardCharsets.UTF_8),
+                          new HashMap<>());
+    }
+
+    /** Returns the number of commits between the one whose record is REC
+     *  and the nearest commit at or before it whose files are stored in
+     *  full. */
+    private static int depthAt(ByteBuffer rec) {
+        return rec.get(1);
+    }
+
+    /** Returns the offset in the pack of the commit with id ID, or -1 if
+     *  it is not in the pack. */
+    private static long offsetOf(String id) {
+        if (id.length() != 2 * ObjectId.SIZE) {
+            return -1;
+        }
+        byte[] entry = IDS.find(ObjectId.fromHex(id).toBytes());
+        return entry == null ? -1
+            : ByteBuffer.wrap(entry).getLong(ObjectId.SIZE);
+    }
+
+    /** Write ID, which may be null, to OUT. */
+    private static void writeOptionalID(DataOutputStream out, String id)
+        throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.write(ObjectId.fromHex(id).toBytes());
+        }
+    }
+
+    /** Read an id written by writeOptionalID from IN. */
+    private static String readOptionalID(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        byte[] id = new byte[ObjectId.SIZE];
+        in.get(id);
+        return ObjectId.toHex(id, 0, ObjectId.SIZE);
+    }
+
+    /** Returns the record of the commit at OFFSET in the pack, after its
+     *  length, as a buffer of its own. */
+    private static ByteBuffer record(long offset) {
+        int len = mapped(offset, 4).getInt(0);
+        return mapped(offset + 4, len);
+    }
+
+    /** Returns the LENGTH bytes of the pack at OFFSET as a buffer of their
+     *  own.  They are taken from the window of the pack that OFFSET is in,
+     *  which is mapped afresh if it does not reach far enough, as when the
+     *  pack has grown since it was mapped. */
+    private static ByteBuffer mapped(long offset, long length) {
+        long start = offset - offset % WINDOW;
+        if (offset + length > start + 2 * WINDOW) {
+            return Utils.mapContents(PACK, offset, length);
+        }
+        ByteBuffer window = windows.get(start);
+        if (window == null || start + window.capacity() < offset + length) {
+            window = Utils.mapContents(PACK, start,
+                                       Math.min(2 * WINDOW,
+                                                PACK.length() - start));
+            windows.put(start, window);
+        }
+        ByteBuffer result = window.duplicate();
+        result.position((int) (offset - start));
+        result.limit((int) (offset - start + length));
+        return result.slice();
+    }
+
+    /** Returns the names of the Java-serialized commit files left by
+     *  older versions of gitlet. */
+    private static List<String> looseNames() {
+        List<String> names = Utils.plainFilenamesIn(LOOSE);
+        return names == null ? Collections.emptyList() : names;
+    }
+
+    /** Returns the Java-serialized commit ID, or null if there is
+     *  none. */
+    private static Commit readLoose(String id) {
+        File inFile = new File(LOOSE, id + ".ser");
+        if (!inFile.isFile()) {
+            return null;
+        }
+        Stats.decoded();
+        Stats.read(inFile.length());
+        try (ObjectInputStream in =
+             new ObjectInputStream(new FileInputStream(inFile))) {
+            return (Commit) in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
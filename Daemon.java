@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** A long-running gitlet process that serves the commands of thin
+ *  clients over the Unix domain socket .gitlet/daemon.sock, so that
+ *  scripted use pays neither JVM startup nor reloading of repository
+ *  state on every command.  The state, the commit pack and the stat index
+ *  stay in memory between commands, and are each reread when their
+ *  files show that another process has changed them.
+ *
+ *  A client sends the number of arguments, each argument, and the
+ *  length of the command's standard input followed by the input itself
+ *  (or -1 for none), and receives the command's output until the daemon
+ *  closes the connection.
+ *  Commands are run one at a time.
+ */
+class Daemon {
+
+    static final File SOCKET = new File(".gitlet/daemon.sock");
+
+    /** Serve commands until told to stop. */
+    static void serve() {
+        if (!SOCKET.getParentFile().isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(SOCKET.toPath());
+        if (SOCKET.exists()) {
+            try {
+                SocketChannel.open(address).close();
+                System.out.println("A gitlet daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                SOCKET.delete();
+            }
+        }
+        try (ServerSocketChannel server =
+             ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client);
+                }
+            }
+        } catch (IOException excp) {
+            System.out.println("gitlet daemon: " + excp.getMessage());
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Run the command sent by CLIENT, sending back its output.  Returns
+     *  false iff the command was to stop the daemon. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        String[] args;
+        byte[] input = null;
+        try {
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(client));
+            args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            int n = in.readInt();
+            if (n >= 0) {
+                input = new byte[n];
+                in.readFully(input);
+            }
+        } catch (EOFException excp) {
+            return true;
+        }
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)),
+            false, "UTF-8");
+        PrintStream stdout = System.out;
+        InputStream stdin = System.in;
+        System.setOut(out);
+        System.setIn(new ByteArrayInputStream(input == null ? new byte[0]
+                                              : input));
+        try {
+            if (args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop")) {
+                System.out.println("Gitlet daemon stopped.");
+                return false;
+            }
+            Main.run(args);
+            //Hashes learned by read-only commands would otherwise keep
+            // the stat index from being reloaded when others change it
+            StatIndex.save();
+        } catch (RuntimeException excp) {
+            System.out.println(excp);
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+            out.flush();
+        }
+        return true;
+    }
+
+    /** Have a running daemon execute the command ARGS, with INPUT (if not
+     *  null) as its standard input, copying its output to the standard
+     *  output.  Returns false, having done nothing, if no daemon is
+     *  listening. */
+    static boolean forward(String[] args, byte[] input) {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String a : args) {
+                out.writeUTF(a);
+            }
+            if (input == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(input.length);
+                out.write(input);
+            }
+            out.flush();
+            Channels.newInputStream(ch).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException excp) {
+            System.out.println("Lost connection to gitlet daemon: "
+                               + excp.getMessage());
+        }
+        return true;
+    }
+}
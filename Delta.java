@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/** Binary deltas: encodings of one byte array (the target) as a series
+ *  of copies from another (the base) and inserted literals, so that a
+ *  version of a file can be stored as its differences from an earlier
+ *  version.
+ *
+ *  A delta holds the lengths of the base and the target, then a series
+ *  of instructions: INSERT followed by a length and that many literal
+ *  bytes, or COPY followed by an offset in the base and a length.  All
+ *  numbers are unsigned LEB128 varints.
+ */
+class Delta {
+
+    private static final byte INSERT = 0;
+    private static final byte COPY = 1;
+
+    /** Length of the blocks of the base that are indexed; no match
+     *  shorter than this is found. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int M = 0x01000193;
+    /** Number of slots examined per lookup in the block index. */
+    private static final int MAX_PROBES = 16;
+
+    /** Returns the delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int n = target.length;
+        if (base.length < BLOCK || n < BLOCK) {
+            insert(out, target, 0, n);
+            return out.toByteArray();
+        }
+
+        int slots = Integer.highestOneBit(2 * (base.length / BLOCK) + 1) * 2;
+        int[] hashes = new int[slots];
+        int[] positions = new int[slots];
+        for (int p = 0; p + BLOCK <= base.length; p += BLOCK) {
+            int h = hash(base, p);
+            for (int s = h & (slots - 1), k = 0; k < MAX_PROBES;
+                 s = (s + 1) & (slots - 1), k += 1) {
+                if (positions[s] == 0) {
+                    hashes[s] = h;
+                    positions[s] = p + 1;
+                    break;
+                }
+            }
+        }
+
+        int power = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            power *= M;
+        }
+        int pending = 0, i = 0;
+        int h = hash(target, 0);
+        while (true) {
+            int bestPos = -1, bestLen = 0, bestBack = 0;
+            for (int s = h & (slots - 1), k = 0;
+                 k < MAX_PROBES && positions[s] != 0;
+                 s = (s + 1) & (slots - 1), k += 1) {
+                if (hashes[s] != h) {
+                    continue;
+                }
+                int p = positions[s] - 1;
+                int len = 0;
+                while (p + len < base.length && i + len < n
+                       && base[p + len] == target[i + len]) {
+                    len += 1;
+                }
+                if (len < BLOCK) {
+                    continue;
+                }
+                int back = 0;
+                while (back < i - pending && back < p
+                       && base[p - back - 1] == target[i - back - 1]) {
+                    back += 1;
+                }
+                if (len + back > bestLen + bestBack) {
+                    bestPos = p;
+                    bestLen = len;
+                    bestBack = back;
+                }
+            }
+            if (bestPos >= 0) {
+                insert(out, target, pending, i - bestBack - pending);
+                out.write(COPY);
+                writeVarint(out, bestPos - bestBack);
+                writeVarint(out, bestLen + bestBack);
+                i += bestLen;
+                pending = i;
+                if (i + BLOCK > n) {
+                    break;
+                }
+                h = hash(target, i);
+            } else {
+                if (i + BLOCK >= n) {
+                    break;
+                }
+                h = (h - target[i] * power) * M + target[i + BLOCK];
+                i += 1;
+            }
+        }
+        insert(out, target, pending, n - pending);
+        return out.toByteArray();
+    }
+
+    /** Returns the target of DELTA, whose base is BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readVarint(in) != base.length) {
+            throw new IllegalArgumentException("delta does not fit its base");
+        }
+        byte[] result = new byte[readVarint(in)];
+        int o = 0;
+        while (in.hasRemaining()) {
+            byte op = in.get();
+            if (op == INSERT) {
+                int len = readVarint(in);
+                in.get(result, o, len);
+                o += len;
+            } else if (op == COPY) {
+                int from = readVarint(in);
+                int len = readVarint(in);
+                System.arraycopy(base, from, result, o, len);
+                o += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (o != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Returns the hash of the BLOCK bytes of B starting at I. */
+    private static int hash(byte[] b, int i) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * M + b[i + k];
+        }
+        return h;
+    }
+
+    /** Write to OUT an instruction inserting the LEN bytes of B starting
+     *  at START, if LEN is not 0. */
+    private static void insert(ByteArrayOutputStream out, byte[] b,
+                               int start, int len) {
+        if (len > 0) {
+            out.write(INSERT);
+            writeVarint(out, len);
+            out.write(b, start, len);
+        }
+    }
+
+    /** Write the non-negative N to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Returns the varint at the position of IN, advancing past it. */
+    private static int readVarint(ByteBuffer in) {
+        int n = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            n |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Differences between sequences of lines, each line given as an int
+ *  code such that equal lines have equal codes, and their display as
+ *  unified diffs.
+ *
+ *  Differences are found with the linear-space version of Myers' O(ND)
+ *  algorithm, which bisects the edit at the middle snake of each region
+ *  and recurses on the halves.  A region whose shortest edit would cost
+ *  more than MAX_COST is instead split by a histogram diff, which
+ *  anchors it at its longest run of common lines among those that occur
+ *  least often, so that very different inputs cost close to linear time.
+ */
+class Diff {
+
+    /** Largest number of insertions and deletions for which Myers'
+     *  algorithm is run on a region before falling back to a histogram
+     *  diff. */
+    static final int MAX_COST = 1024;
+
+    /** Number of occurrences beyond which a line is not used as an anchor
+     *  by the histogram diff. */
+    static final int MAX_CHAIN = 64;
+
+    /** Depth beyond which the histogram diff stops splitting regions. */
+    private static final int MAX_DEPTH = 64;
+
+    /** Lines of unchanged context around each change in unified diffs. */
+    static final int CONTEXT = 3;
+
+    /** Bytes looked at for a NUL when deciding whether contents are
+     *  binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Lines [A_START, A_END) of one sequence replaced by lines
+     *  [B_START, B_END) of the other.  Either range may be empty. */
+    static class Hunk {
+        final int aStart, aEnd, bStart, bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    /** Returns the hunks that turn A into B, in order. */
+    static List<Hunk> diff(int[] a, int[] b) {
+        Pairs matches = new Pairs();
+        compare(a, 0, a.length, b, 0, b.length, matches);
+        ArrayList<Hunk> hunks = new ArrayList<>();
+        int x = 0, y = 0;
+        for (int i = 0; i <= matches.size; i += 2) {
+            int mx = i < matches.size ? matches.data[i] : a.length;
+            int my = i < matches.size ? matches.data[i + 1] : b.length;
+            if (mx > x || my > y) {
+                hunks.add(new Hunk(x, mx, y, my));
+            }
+            x = mx + 1;
+            y = my + 1;
+        }
+        return hunks;
+    }
+
+    /** Add to MATCHES, in order, the pairs of positions of the lines
+     *  matched by an edit turning A[A0..A1) into B[B0..B1). */
+    private static void compare(int[] a, int a0, int a1, int[] b, int b0,
+                                int b1, Pairs matches) {
+        int suffix = 0;
+        while (a0 < a1 && b0 < b1 && a[a0] == b[b0]) {
+            matches.add(a0++, b0++);
+        }
+        while (a1 - suffix > a0 && b1 - suffix > b0
+               && a[a1 - suffix - 1] == b[b1 - suffix - 1]) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a, a0, a1, b, b0, b1);
+            if (snake == null) {
+                histogram(a, a0, a1, b, b0, b1, matches, 0);
+            } else {
+                compare(a, a0, snake[0], b, b0, snake[1], matches);
+                for (int x = snake[0], y = snake[1]; x < snake[2];
+                     x += 1, y += 1) {
+                    matches.add(x, y);
+                }
+                compare(a, snake[2], a1, b, snake[3], b1, matches);
+            }
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            matches.add(a1 + k, b1 + k);
+        }
+    }
+
+    /** Returns the start and end {x0, y0, x1, y1} of the middle snake of
+     *  a shortest edit turning A[A0..A1) into B[B0..B1), both non-empty
+     *  and with differing first and last lines, or null if that edit
+     *  costs more than MAX_COST.  The search runs from both ends at once
+     *  and keeps only the furthest point reached on each diagonal. */
+    private static int[] middleSnake(int[] a, int a0, int a1,
+                                     int[] b, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = Math.min((n + m + 1) / 2, MAX_COST / 2 + 1);
+        int off = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[off + k - 1]
+                                < forward[off + k + 1])) {
+                    x = forward[off + k + 1];
+                } else {
+                    x = forward[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && a[a0 + x] == b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[off + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                    && x + backward[off + r] >= n) {
+                    return new int[] {a0 + x0, b0 + y0, a0 + x, b0 + y};
+                }
+            }
+            for (int r = -d; r <= d; r += 2) {
+                int u;
+                if (r == -d || (r != d && backward[off + r - 1]
+                                < backward[off + r + 1])) {
+                    u = backward[off + r + 1];
+                } else {
+                    u = backward[off + r - 1] + 1;
+                }
+                int v = u - r;
+                int u0 = u, v0 = v;
+                while (u < n && v < m
+                       && a[a1 - 1 - u] == b[b1 - 1 - v]) {
+                    u += 1;
+                    v += 1;
+                }
+                backward[off + r] = u;
+                int k = delta - r;
+                if (!odd && k >= -d && k <= d
+                    && forward[off + k] + u >= n) {
+                    return new int[] {a1 - u, b1 - v, a1 - u0, b1 - v0};
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Add to MATCHES, in order, the pairs of positions of lines matched
+     *  by a histogram diff of A[A0..A1) and B[B0..B1), DEPTH levels deep
+     *  in its recursion.  The region is split at the longest run of
+     *  common lines whose rarest line occurs least often in A, the one
+     *  nearest the middle among equals, and each side is diffed in
+     *  turn; lines occurring more than MAX_CHAIN times are never
+     *  anchors, and a region without anchors, or more than MAX_DEPTH
+     *  levels down, is left unmatched. */
+    private static void histogram(int[] a, int a0, int a1, int[] b, int b0,
+                                  int b1, Pairs matches, int depth) {
+        while (a0 < a1 && b0 < b1 && a[a0] == b[b0]) {
+            matches.add(a0++, b0++);
+        }
+        int suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0
+               && a[a1 - suffix - 1] == b[b1 - suffix - 1]) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1 && depth < MAX_DEPTH) {
+            HashMap<Integer, Pairs> occurrences = new HashMap<>();
+            for (int i = a0; i < a1; i += 1) {
+                occurrences.computeIfAbsent(a[i], c -> new Pairs())
+                    .add(i, 0);
+            }
+            int bestA = -1, bestB = -1, bestLen = 0, bestOffCentre = 0;
+            int bestCount = MAX_CHAIN + 1;
+            int centre = (b0 + b1) / 2;
+            for (int j = b0; j < b1;) {
+                Pairs at = occurrences.get(b[j]);
+                int next = j + 1;
+                if (at != null
+                    && at.size / 2 <= Math.min(bestCount, MAX_CHAIN)) {
+                    for (int p = 0; p < at.size; p += 2) {
+                        int i = at.data[p];
+                        int s = 0, e = 1;
+                        while (i - s > a0 && j - s > b0
+                               && a[i - s - 1] == b[j - s - 1]) {
+                            s += 1;
+                        }
+                        while (i + e < a1 && j + e < b1
+                               && a[i + e] == b[j + e]) {
+                            e += 1;
+                        }
+                        int count = MAX_CHAIN + 1;
+                        for (int q = i - s; q < i + e; q += 1) {
+                            count = Math.min(count,
+                                             occurrences.get(a[q]).size / 2);
+                        }
+                        int offCentre = Math.abs(j - s + (s + e) / 2 - centre);
+                        if (count < bestCount
+                            || (count == bestCount && s + e > bestLen)
+                            || (count == bestCount && s + e == bestLen
+                                && offCentre < bestOffCentre)) {
+                            bestA = i - s;
+                            bestB = j - s;
+                            bestLen = s + e;
+                            bestCount = count;
+                            bestOffCentre = offCentre;
+                        }
+                        next = Math.max(next, j + e);
+                    }
+                }
+                j = next;
+            }
+            if (bestLen > 0) {
+                histogram(a, a0, bestA, b, b0, bestB, matches, depth + 1);
+                for (int k = 0; k < bestLen; k += 1) {
+                    matches.add(bestA + k, bestB + k);
+                }
+                histogram(a, bestA + bestLen, a1, b, bestB + bestLen, b1,
+                          matches, depth + 1);
+            }
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            matches.add(a1 + k, b1 + k);
+        }
+    }
+
+    /** Write to OUT a unified diff of A and B, the old and new contents
+     *  of the file PATH, either of which may be null for a file that does
+     *  not exist, with CONTEXT lines of context around each change. */
+    static void unified(String path, ByteBuffer a, ByteBuffer b,
+                        OutputStream out) throws IOException {
+        write(out, "diff --git a/" + path + " b/" + path + "\n");
+        if (a == null) {
+            write(out, "new file\n");
+        } else if (b == null) {
+            write(out, "deleted file\n");
+        }
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        if (binary(a == null ? empty : a) || binary(b == null ? empty : b)) {
+            write(out, "Binary files " + (a == null ? "/dev/null" : "a/" + path)
+                  + " and " + (b == null ? "/dev/null" : "b/" + path)
+                  + " differ\n");
+            return;
+        }
+        Lines old = new Lines(a == null ? empty : a);
+        Lines now = new Lines(b == null ? empty : b);
+        HashMap<ByteBuffer, Integer> codes = new HashMap<>();
+        List<Hunk> hunks = diff(old.codes(codes), now.codes(codes));
+        if (hunks.isEmpty()) {
+            return;
+        }
+        write(out, "--- " + (a == null ? "/dev/null" : "a/" + path) + "\n");
+        write(out, "+++ " + (b == null ? "/dev/null" : "b/" + path) + "\n");
+        for (int i = 0; i < hunks.size();) {
+            int j = i + 1;
+            while (j < hunks.size()
+                   && hunks.get(j).aStart - hunks.get(j - 1).aEnd
+                   <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Hunk first = hunks.get(i), last = hunks.get(j - 1);
+            int aFrom = Math.max(0, first.aStart - CONTEXT);
+            int bFrom = first.bStart - (first.aStart - aFrom);
+            int aTo = Math.min(old.size(), last.aEnd + CONTEXT);
+            int bTo = last.bEnd + (aTo - last.aEnd);
+            write(out, "@@ -" + range(aFrom, aTo) + " +" + range(bFrom, bTo)
+                  + " @@\n");
+            int pos = aFrom;
+            for (int h = i; h < j; h += 1) {
+                Hunk k = hunks.get(h);
+                old.writeEach(out, ' ', pos, k.aStart);
+                old.writeEach(out, '-', k.aStart, k.aEnd);
+                now.writeEach(out, '+', k.bStart, k.bEnd);
+                pos = k.aEnd;
+            }
+            old.writeEach(out, ' ', pos, aTo);
+            i = j;
+        }
+    }
+
+    /** Returns the lines [FROM, TO) as a unified diff range. */
+    private static String range(int from, int to) {
+        if (to - from == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (to == from ? from : from + 1) + "," + (to - from);
+    }
+
+    /** Returns true iff CONTENTS look binary: a NUL occurs near their
+     *  start. */
+    private static boolean binary(ByteBuffer contents) {
+        int n = Math.min(contents.limit(), BINARY_PROBE);
+        for (int i = 0; i < n; i += 1) {
+            if (contents.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The contents of a file, divided into lines that keep their line
+     *  terminators; a last line may lack one.  The contents may be a
+     *  mapped file, which is never copied whole. */
+    static class Lines {
+        private final ByteBuffer data;
+        /** Offsets of the starts of the lines, followed by the length of
+         *  DATA. */
+        private final int[] starts;
+
+        Lines(ByteBuffer data) {
+            this.data = data;
+            int length = data.limit();
+            int n = 0;
+            for (int k = 0; k < length; k += 1) {
+                if (data.get(k) == '\n' || k == length - 1) {
+                    n += 1;
+                }
+            }
+            starts = new int[n + 1];
+            n = 0;
+            for (int k = 0; k < length; k += 1) {
+                if (data.get(k) == '\n' || k == length - 1) {
+                    n += 1;
+                    starts[n] = k + 1;
+                }
+            }
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return starts.length - 1;
+        }
+
+        /** Returns a code for each line, such that lines with equal
+         *  contents have equal codes, drawing codes from CODES. */
+        int[] codes(HashMap<ByteBuffer, Integer> codes) {
+            int[] result = new int[size()];
+            for (int k = 0; k < result.length; k += 1) {
+                ByteBuffer line = data.slice(starts[k],
+                                             starts[k + 1] - starts[k]);
+                Integer code = codes.putIfAbsent(line, codes.size());
+                result[k] = code == null ? codes.size() - 1 : code;
+            }
+            return result;
+        }
+
+        /** Write lines [FROM, TO) to OUT. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            copy(out, starts[from], starts[to]);
+        }
+
+        /** Write lines [FROM, TO) to OUT, ending the last with a line
+         *  terminator if it lacks one. */
+        void writeLines(OutputStream out, int from, int to)
+            throws IOException {
+            write(out, from, to);
+            if (to > from && !terminated(to - 1)) {
+                out.write('\n');
+            }
+        }
+
+        /** Write lines [FROM, TO) to OUT, each preceded by PREFIX, as in
+         *  unified diffs. */
+        void writeEach(OutputStream out, char prefix, int from, int to)
+            throws IOException {
+            for (int k = from; k < to; k += 1) {
+                out.write(prefix);
+                copy(out, starts[k], starts[k + 1]);
+                if (!terminated(k)) {
+                    Diff.write(out, "\n\\ No newline at end of file\n");
+                }
+            }
+        }
+
+        /** Returns true iff line K ends with a line terminator. */
+        private boolean terminated(int k) {
+            return data.get(starts[k + 1] - 1) == '\n';
+        }
+
+        /** Write bytes [FROM, TO) of DATA to OUT. */
+        private void copy(OutputStream out, int from, int to)
+            throws IOException {
+            if (data.hasArray()) {
+                out.write(data.array(), data.arrayOffset() + from, to - from);
+                return;
+            }
+            byte[] chunk = new byte[Math.min(to - from, 1 << 16)];
+            for (int k = from; k < to; k += chunk.length) {
+                int len = Math.min(chunk.length, to - k);
+                data.get(k, chunk, 0, len);
+                out.write(chunk, 0, len);
+            }
+        }
+    }
+
+    /** A growing list of pairs of ints. */
+    private static class Pairs {
+        int[] data = new int[16];
+        /** Number of ints in use: twice the number of pairs. */
+        int size;
+
+        void add(int x, int y) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, 2 * data.length);
+            }
+            data[size++] = x;
+            data[size++] = y;
+        }
+    }
+}
@@ -6,17 +6,25 @@ import java.util.HashSet;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Scanner;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 
 /**
@@ -26,146 +34,73 @@ public class Gitlet implements Serializable {
 
     private GitletInfo info;
 
-    private class GitletInfo implements Serializable {
-
-        //The current commit user is working on
-        private Commit head;
-
-        //The current branch we are on
-        private String currBranch;
-
-        //All branches stored in this .gitlet
-        //Key is branch name, Value is the SHA1ID of the head commit in that branch
-        private HashMap<String, String> branches;
-
-        //Files that are staged for commit
-        private HashMap<String, String> stagingArea;
-
-        //Files that are currently being tracked but to be untracked in the next commit
-        private HashSet<String> toUntrack;
-
-        //the SHA1ID of all commits
-        private HashSet<String> allCommits;
-
-        //all removed files
-        private HashSet<String> removedFiles;
-
-        private HashMap<String, ArrayList<String>> splitpoints;
-
-
-        GitletInfo() {
-            head = null;
-            currBranch = null;
-            branches = new HashMap<>();
-            stagingArea = new HashMap<>();
-            toUntrack = new HashSet<>();
-            allCommits = new HashSet<>();
-            removedFiles = new HashSet<>();
-            splitpoints = new HashMap<>();
-        }
-
-        public void setHead(Commit h) {
-            head = h;
-        }
-
-        public void setCurrBranch(String b) {
-            currBranch = b;
-        }
-
-        public void setBranches(HashMap<String, String> b) {
-            branches = b;
-        }
-
-        public void setStagingArea(HashMap<String, String> s) {
-            stagingArea = s;
-        }
-
-        public void setToUntrack(HashSet<String> r) {
-            toUntrack = r;
-        }
-
-
-    }
-
+    //Whether to report what commands did in more detail
+    private boolean verbose;
 
     public Gitlet() {
         info = new GitletInfo();
     }
 
+    public void setVerbose(boolean v) {
+        verbose = v;
+    }
+
 
-    //Static method Serialization that
-    // takes the GitletInfo as an object and serialize that object to a file
+    //Static method Serialization that persists the changes made to
+    // the GitletInfo since it was loaded (see StateJournal)
     public static void serialization(GitletInfo g) {
-        File outFile = new File(".gitlet/info.ser");
-        GitletInfo now = g;
+        long begin = Stats.begin();
         try {
-            ObjectOutputStream out =
-                    new ObjectOutputStream(new FileOutputStream(outFile));
-            out.writeObject(now);
-            out.close();
-        } catch (IOException excp) {
+            StateJournal.save(g);
+            if (!StateJournal.deferring()) {
+                StatIndex.save();
+            }
+        } catch (IllegalArgumentException excp) {
             System.out.println("gitletinfo serialization wrong!");
+        } finally {
+            Stats.end(Stats.SAVE_STATE, begin);
         }
     }
 
 
-    //Static method Deserialization that deserialize the
-    // GitletInfo package and get the GitletInfo back
+    //Static method Deserialization that rebuilds the
+    // GitletInfo from the state checkpoint and journal
     public static GitletInfo deserialization() {
-        GitletInfo now;
-        File inFile = new File(".gitlet/info.ser");
+        long begin = Stats.begin();
         try {
-            FileInputStream fi = new FileInputStream(inFile);
-            ObjectInputStream oi = new ObjectInputStream(fi);
-
-            now = (GitletInfo) oi.readObject();
-            return now;
-
-        } catch (IOException e) {
+            return StateJournal.load();
+        } catch (IllegalArgumentException excp) {
             System.out.println("gitletinfo deserialization wrong!");
             return null;
-        } catch (ClassNotFoundException e) {
-            System.out.println("Class not found exception");
-            return null;
+        } finally {
+            Stats.end(Stats.LOAD_STATE, begin);
         }
     }
 
 
-    //Static method to serialize commits;
+    //Static method to store commits in the commit pack
     public static void serialization(Commit c) {
-        Commit now = c;
-        File outFile = new File(".gitlet/commits/"
-                + c.getSHA1() + ".ser");
         try {
-            ObjectOutputStream out =
-                    new ObjectOutputStream(new FileOutputStream(outFile));
-            out.writeObject(now);
-            out.close();
-        } catch (IOException excp) {
+            CommitStore.put(c);
+        } catch (IllegalArgumentException excp) {
             System.out.println("commit serialization wrong");
         }
     }
 
 
-    //Static method to deserialize commits
+    //Static method to read commits back from the commit store
     // @para the SHA1ID of the commit we want to deserialize
     public static Commit deserialization(String id) {
-        Commit now;
-        File inFile = new File(".gitlet/commits/" + id + ".ser");
+        Commit now = null;
         try {
-            FileInputStream fi = new FileInputStream(inFile);
-            ObjectInputStream oi = new ObjectInputStream(fi);
-
-            now = (Commit) oi.readObject();
-            return now;
-
-        } catch (IOException e) {
+            now = CommitStore.get(id);
+        } catch (IllegalArgumentException excp) {
+            now = null;
+        }
+        if (now == null) {
             System.out.println("commit deserialization wrong!");
-            return null;
-        } catch (ClassNotFoundException e) {
-            System.out.println("Class not found exception");
-            return null;
         }
+        return now;
     }
 
 
@@ -185,8 +120,14 @@ public class Gitlet implements Serializable {
                 gitletDir.mkdir();
 
 
-                //Make the initial commit
+                //Create the blobs directory to store all blobs
+                Path blobs = Paths.get(".gitlet/blobs");
+                Files.createDirectory(blobs);
+
+
+                //Make the initial commit, which tracks the empty tree
                 Commit initCommit = new Commit();
+                initCommit.setTree(Tree.build(new HashMap<>()));
                 info.setHead(initCommit);
 
 
@@ -196,24 +137,6 @@ public class Gitlet implements Serializable {
                 //Store the branch information
                 info.branches.put("master", info.head.getSHA1());
 
-
-                //Store the initial commits to allCommits
-                info.allCommits.add(info.head.getSHA1());
-
-                //Create the staging area directory to store the files
-                Path stagingArea = Paths.get(".gitlet/stagingarea");
-                Files.createDirectory(stagingArea);
-
-
-                //Create the blobs directory to store all blobs
-                Path blobs = Paths.get(".gitlet/blobs");
-                Files.createDirectory(blobs);
-
-                //Create the commit directory to store all the serialized commits
-                Path commits = Paths.get(".gitlet/commits");
-                Files.createDirectory(commits);
-
-
                 serialization(initCommit);
 
                 //Serialize the info object and store it
@@ -226,90 +149,97 @@ public class Gitlet implements Serializable {
         }
     }
 
-    public void add(String fn) {
+    //Add every file named by fns, which may be files, directories
+    // (meaning all the files in them) or glob patterns
+    public void add(String... fns) {
         info = deserialization();
-        File f = new File(fn);
-        if (f.exists()) {
-            //If this file is marked to be untracked, remove the mark
-            if (info.toUntrack.contains(fn)) {
-                info.toUntrack.remove(fn);
-                info.removedFiles.remove(fn);
+        LinkedHashSet<String> files = new LinkedHashSet<>();
+        for (String fn : fns) {
+            File f = new File(fn);
+            if (f.isDirectory()) {
+                String dir = workingPath(fn);
+                for (String a : Utils.plainFilenamesUnder(f)) {
+                    files.add(dir.isEmpty() ? a : dir + "/" + a);
+                }
+            } else if (f.exists() || !isGlob(fn)) {
+                files.add(workingPath(fn));
             } else {
-
-                int size = info.stagingArea.size();
-                //if this file is already in the staging area, check whether it has been modified
-                if (info.stagingArea.containsKey(fn)) {
-
-                    String newID = fileIDGenerator(f);
-                    String oldID = info.stagingArea.get(fn);
-
-                    if (!newID.equals(oldID)) {
-                        //Delete the old file in .gitlet/stagingarea folder and create the new file
-                        try {
-                            File oldFile = new File(".gitlet/stagingarea/"
-                                    + info.stagingArea.get(fn));
-                            oldFile.delete();
-                            File newFile = new File(".gitlet/stagingarea/" + newID);
-                            newFile.createNewFile();
-                            Utils.writeContents(newFile, Utils.readContents(f));
-
-
-                            //replace the information in the stagingArea field
-                            info.stagingArea.remove(fn);
-                            info.stagingArea.put(fn, newID);
-                        } catch (IOException e) {
-                            System.out.println("Add wrong 1");
-                        }
-                    }
-                } else {
-                    //If this file not tracked in the current commit, add it to staging area
-                    if (!info.head.getFilesTracked().containsKey(fn)) {
-                        try {
-                            //get the SHA1ID for that file
-                            String id = fileIDGenerator(f);
-                            //Make a copy of that file and store it in the staging area
-                            // folder with its SHA1ID as its name
-                            String path = ".gitlet/stagingarea/" + id;
-                            File newFile = new File(path);
-                            newFile.createNewFile();
-                            Utils.writeContents(newFile, Utils.readContents(f));
-
-                            //Store information about this file into
-                            // stagingarea field in info package
-                            info.stagingArea.put(fn, id);
-                        } catch (IOException e) {
-                            System.out.println("Add wrong 2");
-                        }
-                    } else {
-                        //Get the SHA1ID of the version tracked by the most recent commit and
-                        // the current version in the working directory
-                        String newID = fileIDGenerator(f);
-                        String oldID = info.head.getFilesTracked().get(fn);
-                        //If the IDs are different, this file has been modified.
-                        // Add it to staging area.
-                        if (!newID.equals(oldID)) {
-                            try {
-                                File newFile = new File(".gitlet/stagingarea/" + newID);
-                                newFile.createNewFile();
-                                Utils.writeContents(newFile, Utils.readContents(f));
-
-                                info.stagingArea.put(fn, newID);
-                            } catch (IOException e) {
-                                System.out.println("Add wrong 3");
-                            }
-                        }
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fn);
+                for (String a : Utils.plainFilenamesUnder(new File("").getAbsoluteFile())) {
+                    if (matcher.matches(Paths.get(a))) {
+                        files.add(a);
                     }
                 }
             }
-        } else {
-            System.out.println("File does not exist!");
         }
+        addFiles(files);
         serialization(info);
     }
 
+    //The path of file fn relative to the working directory, with "/" as
+    // separator, which is how files are named in commits
+    public static String workingPath(String fn) {
+        return Paths.get(fn).normalize().toString().replace(File.separatorChar, '/');
+    }
+
+    private static boolean isGlob(String fn) {
+        return fn.indexOf('*') >= 0 || fn.indexOf('?') >= 0
+                || fn.indexOf('[') >= 0 || fn.indexOf('{') >= 0;
+    }
+
+    //Stage the files fns. The files are hashed and written to the object
+    // store in parallel; the staging area is then updated in one pass.
+    private void addFiles(Collection<String> fns) {
+        HashMap<String, String> ids = new HashMap<>();
+        fns.parallelStream().forEach(fn -> {
+            File f = new File(fn);
+            if (!f.isFile()) {
+                return;
+            }
+            try {
+                String id = fileIDGenerator(f);
+                //Only versions that will be staged need storing
+                if (!info.toUntrack.contains(fn)
+                        && !id.equals(info.stagingArea.get(fn))
+                        && (info.stagingArea.containsKey(fn)
+                        || !id.equals(info.head.getFilesTracked().get(fn)))) {
+                    ObjectStore.store(f, id);
+                }
+                synchronized (ids) {
+                    ids.put(fn, id);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Add wrong");
+            }
+        });
+
+        for (String fn : fns) {
+            if (!new File(fn).exists()) {
+                System.out.println("File does not exist!");
+            } else if (!ids.containsKey(fn)) {
+                continue;
+            } else if (info.toUntrack.contains(fn)) {
+                //If this file is marked to be untracked, remove the mark
+                info.toUntrack.remove(fn);
+                info.removedFiles.remove(fn);
+            } else if (info.stagingArea.containsKey(fn)) {
+                //If this file is already in the staging area,
+                // replace it if it has been modified
+                info.stagingArea.put(fn, ids.get(fn));
+            } else if (!ids.get(fn).equals(info.head.getFilesTracked().get(fn))) {
+                //If this file is not tracked in the current commit, or the
+                // tracked version differs from the one in the working
+                // directory, add it to the staging area
+                info.stagingArea.put(fn, ids.get(fn));
+            }
+        }
+    }
+
 
+    //Get the SHA1ID of a working file, rehashing it only if the stat
+    // index says it may have changed
     public static String fileIDGenerator(File f) {
-        return Utils.sha1(Utils.readContents(f));
+        return StatIndex.idOf(f);
     }
 
 
@@ -319,20 +249,12 @@ public class Gitlet implements Serializable {
         //Check if there is need to make the commit. If there is stagingArea is empty and there is
         //nothing to untrack, there is no need to commit
         if (info.stagingArea.size() > 0 || info.toUntrack.size() > 0) {
-            //Make copies of every file in the staging area
-            // and put them into .gitlet/blobs directory
+            //Staged files are already in .gitlet/blobs; only copies staged
+            // by older versions of gitlet still have to be moved there
             for (String a : info.stagingArea.keySet()) {
                 try {
-                    String newPath = ".gitlet/blobs/" + info.stagingArea.get(a);
-                    File newFile = new File(newPath);
-                    newFile.createNewFile();
-
-                    String oldPath = ".gitlet/stagingarea/" + info.stagingArea.get(a);
-                    File oldFile = new File(oldPath);
-
-                    Utils.writeContents(newFile, Utils.readContents(oldFile));
-
-                } catch (IOException e) {
+                    ObjectStore.promote(info.stagingArea.get(a));
+                } catch (IllegalArgumentException e) {
                     System.out.println("Commit wrong 1");
                 }
             }
@@ -340,8 +262,9 @@ public class Gitlet implements Serializable {
             Commit c = new Commit(m);
             //Set the parent of the new commit to the previous commit's SHA1ID
             c.setParent(info.head.getSHA1());
-            //Set the new commit's trackedFiles to the previous commit's trackedFiles
-            c.setFilesTracked(info.head.getFilesTracked());
+            //Start the new commit's trackedFiles from a copy of the previous
+            // commit's, which must not change along with it
+            c.setFilesTracked(new HashMap<>(info.head.getFilesTracked()));
 
             //For everything in the staging area,
             // if it already exists in the previous commit,
@@ -359,6 +282,9 @@ public class Gitlet implements Serializable {
                     c.getFilesTracked().remove(b);
                 }
             }
+            //Build the new commit's tree from the previous one, rewriting
+            // only the directories that contain changes
+            c.setTree(commitTree(info.head));
             //Once message, filesTracked, parent,
             // time are all set for the commit, we can generate the SHA1 ID.
             c.setSHA1();
@@ -367,14 +293,6 @@ public class Gitlet implements Serializable {
             //Update branches field
             info.branches.replace(info.currBranch, info.head.getSHA1());
 
-            //Update allCommits field
-            info.allCommits.add(c.getSHA1());
-
-            //Clear the stagingarea folder inside .gitlet.
-            for (String a : info.stagingArea.keySet()) {
-                File f = new File(".gitlet/stagingarea/" + info.stagingArea.get(a));
-                f.delete();
-            }
             //Clear stagingArea HashMap;
             info.stagingArea.clear();
 
@@ -394,20 +312,28 @@ public class Gitlet implements Serializable {
         serialization(info);
     }
 
+    //The root tree for a commit made from head and the staged changes
+    private String commitTree(Commit head) {
+        if (head.getTree() == null) {
+            return Tree.build(head.getFilesTracked());
+        }
+        HashMap<String, String> changes = new HashMap<>(info.stagingArea);
+        for (String b : info.toUntrack) {
+            changes.put(b, null);
+        }
+        return Tree.update(head.getTree(), changes);
+    }
+
     public void rm(String m) {
 
         info = deserialization();
+        m = workingPath(m);
 
         if (info.head.getFilesTracked().containsKey(m)) {
-            File toRemove = new File(m);
-            if (toRemove.exists()) {
-                toRemove.delete();
-            }
+            Utils.deleteWorkingFile(new File(m));
 
             if (info.stagingArea.containsKey(m)) {
                 info.stagingArea.remove(m);
-                File rmFromSA = new File(".gitlet/stagingarea/" + info.stagingArea.get(m));
-                rmFromSA.delete();
             }
 
             info.removedFiles.add(m);
@@ -421,8 +347,6 @@ public class Gitlet implements Serializable {
 
             if (info.stagingArea.containsKey(m)) {
                 info.stagingArea.remove(m);
-                File rmFromSA = new File(".gitlet/stagingarea/" + info.stagingArea.get(m));
-                rmFromSA.delete();
             } else {
                 System.out.println("No reason to remove the file.");
             }
@@ -434,67 +358,111 @@ public class Gitlet implements Serializable {
     }
 
     public void log() {
+        log(new LogFilter());
+    }
+
+    //Print the first-parent history of the head commit that filter lets
+    // through, stopping the walk as soon as it has nothing more to show
+    public void log(LogFilter filter) {
 
         info = deserialization();
 
-        Commit head = info.head;
-        String headID = head.getSHA1();
-        System.out.println("===");
-        System.out.println("Commit " + headID);
-        System.out.println(head.getTime());
-        System.out.println(head.getMessage());
-        System.out.println();
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
 
-        String curr = head.getParent();
+        String curr = info.head.getSHA1();
 
         while (curr != null) {
-            Commit a = deserialization(curr);
-            System.out.println("===");
-            System.out.println("Commit " + curr);
-            System.out.println(a.getTime());
-            System.out.println(a.getMessage());
-            System.out.println();
+            Commit a = CommitStore.header(curr);
+            if (filter.done(a.getTime())) {
+                break;
+            }
+            if (filter.shows(a.getTime())) {
+                printCommit(out, a);
+                filter.shown();
+            }
             curr = a.getParent();
         }
+        out.flush();
 
         serialization(info);
     }
 
 
     public void globallog() {
+        globallog(new LogFilter());
+    }
+
+    //Print every commit that filter lets through, newest first, in the
+    // order given by the commit graph
+    public void globallog(LogFilter filter) {
 
         info = deserialization();
 
-        for (String a : info.allCommits) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
 
-            Commit toPrint = deserialization(a);
-            System.out.println("===");
-            System.out.println("Commit " + toPrint.getSHA1());
-            System.out.println(toPrint.getTime());
-            System.out.println(toPrint.getMessage());
-            System.out.println();
+        try {
+            for (int i : CommitGraph.byTime()) {
+                Commit a = CommitStore.header(CommitGraph.id(i));
+                if (filter.done(a.getTime())) {
+                    break;
+                }
+                if (filter.shows(a.getTime())) {
+                    printCommit(out, a);
+                    filter.shown();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("globallog wrong!");
+        }
+        out.flush();
+    }
 
+    //Print commit c as log shows it
+    private static void printCommit(PrintWriter out, Commit c) {
+        out.println("===");
+        out.println("Commit " + c.getSHA1());
+        if (c.getSecondParent() != null) {
+            out.println("Merge: " + c.getParent().substring(0, 7) + " "
+                    + c.getSecondParent().substring(0, 7));
         }
+        out.println(c.getTime());
+        out.println(c.getMessage());
+        out.println();
     }
 
 
     public void find(String m) {
+        find(m, "exact");
+    }
 
-        info = deserialization();
-
-        int count = 0;
-
-        for (String a : info.allCommits) {
+    //Print the ids of the commits whose messages match m, which is the
+    // whole message, a substring of it or some of its words according
+    // to how; see MessageIndex
+    public void find(String m, String how) {
 
-            Commit toFind = deserialization(a);
+        info = deserialization();
 
-            if (toFind.getMessage().equals(m)) {
-                System.out.println(a);
-                count++;
+        List<String> found;
+        try {
+            if (how.equals("substring")) {
+                found = MessageIndex.substring(m);
+            } else if (how.equals("words")) {
+                found = MessageIndex.words(m);
+            } else {
+                found = MessageIndex.exact(m);
             }
+        } catch (IllegalArgumentException e) {
+            System.out.println("find wrong!");
+            return;
         }
 
-        if (count == 0) {
+        for (String id : found) {
+            System.out.println(id);
+        }
+
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -534,75 +502,64 @@ public class Gitlet implements Serializable {
 
         System.out.println("=== Modifications Not Staged For Commit ===");
 
-        System.out.println();
-
-        System.out.println("=== Untracked Files ===");
-
-        System.out.println();
-
-    }
-
-
-        /*
-        System.out.println("=== Modifications Not Staged For Commit ===");
-
-        //Trying to find files modified but not staged
-        and put into a HashMap with first string the file name
-        //and second string the type of modification(modified or deleted)
-        HashMap<String,String> modifiedNotStaged = new HashMap();
-        for (String a: head.filesList){
+        //Files modified but not staged, with the type of modification
+        // (modified or deleted). Working files are only rehashed when
+        // their stat data differ from the stat index.
+        TreeMap<String, String> modifiedNotStaged = new TreeMap<>();
+        for (String a : info.head.getFilesTracked().keySet()) {
+            if (info.toUntrack.contains(a) || info.stagingArea.containsKey(a)) {
+                continue;
+            }
             File f = new File(a);
-            if (f.exists()){
-                if(!fileComparator(f, head.filesTracked.get(a))){
-                    if (!stagingArea.containsKey(a)){
-                        modifiedNotStaged.put(a, "modified");
-                    }
-                }
+            if (!f.exists()) {
+                modifiedNotStaged.put(a, "deleted");
+            } else if (!fileIDGenerator(f).equals(info.head.getFilesTracked().get(a))) {
+                modifiedNotStaged.put(a, "modified");
             }
         }
 
-        for (String a: stagingArea.keySet()){
+        for (String a : info.stagingArea.keySet()) {
             File f = new File(a);
-            if (!f.exists()){
+            if (!f.exists()) {
                 modifiedNotStaged.put(a, "deleted");
-            } else{
-                if (!fileComparator(f, stagingArea.get(a))){
-                    modifiedNotStaged.put(a, "modified");
-                }
+            } else if (!fileIDGenerator(f).equals(info.stagingArea.get(a))) {
+                modifiedNotStaged.put(a, "modified");
             }
         }
 
-        for (String a: modifiedNotStaged.keySet()){
+        for (String a : modifiedNotStaged.keySet()) {
             System.out.println(a + " (" + modifiedNotStaged.get(a) + ")");
         }
 
         System.out.println();
+
         System.out.println("=== Untracked Files ===");
-        for (String a: unTrackedFiles){
-            System.out.println(a);
+
+        for (String a : Utils.plainFilenamesUnder(new File("").getAbsoluteFile())) {
+            if ((!info.head.getFilesTracked().containsKey(a)
+                    || info.toUntrack.contains(a))
+                    && !info.stagingArea.containsKey(a)) {
+                System.out.println(a);
+            }
         }
 
+        System.out.println();
+
+        StatIndex.save();
     }
-    */
 
 
     public void checkoutf(String s) {
         info = deserialization();
+        s = workingPath(s);
 
         if (!info.head.getFilesTracked().containsKey(s)) {
             System.out.println("File does not exist in that commit.");
             return;
         } else {
-            File f = new File(s);
-            if (f.exists()) {
-                f.delete();
-            }
-
             try {
-                f.createNewFile();
-                File n = new File(".gitlet/blobs/" + info.head.getFilesTracked().get(s));
-                Utils.writeContents(f, Utils.readContents(n));
-            } catch (IOException e) {
+                ObjectStore.checkout(info.head.getFilesTracked().get(s), new File(s));
+            } catch (IllegalArgumentException e) {
                 System.out.println("checkoutf wrong!");
             }
         }
@@ -610,20 +567,26 @@ public class Gitlet implements Serializable {
         serialization(info);
     }
 
+    //Returns the full SHA1ID of the commit whose id is or starts with s,
+    // or prints why there is none and returns null
+    private String resolveCommit(String s) {
+        List<String> found = CommitStore.matching(s, 2);
+        if (found.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (found.size() > 1) {
+            System.out.println("Ambiguous commit id " + s + ".");
+            return null;
+        }
+        return found.get(0);
+    }
+
     public void checkoutcf(String a, String b) {
         info = deserialization();
+        b = workingPath(b);
 
-        if (a.length() != 40) {
-            for (String i : info.allCommits) {
-                if (i.substring(0, a.length()).equals(a)) {
-                    a = i;
-                    break;
-                }
-            }
-        }
-
-        if (!info.allCommits.contains(a)) {
-            System.out.println("No commit with that id exists.");
+        a = resolveCommit(a);
+        if (a == null) {
             return;
         }
 
@@ -637,16 +600,9 @@ public class Gitlet implements Serializable {
             System.out.println("File does not exist in that commit.");
             return;
         } else {
-            File f = new File(b);
-            if (f.exists()) {
-                f.delete();
-            }
-
             try {
-                f.createNewFile();
-                File n = new File(".gitlet/blobs/" + info.head.getFilesTracked().get(b));
-                Utils.writeContents(f, Utils.readContents(n));
-            } catch (IOException e) {
+                ObjectStore.checkout(info.head.getFilesTracked().get(b), new File(b));
+            } catch (IllegalArgumentException e) {
                 System.out.println("checkoutf wrong!");
             }
         }
@@ -675,7 +631,7 @@ public class Gitlet implements Serializable {
         Commit checkouted = deserialization(commitID);
 
         File currentDir = new File("").getAbsoluteFile();
-        for (String a : Utils.plainFilenamesIn(currentDir)) {
+        for (String a : Utils.plainFilenamesUnder(currentDir)) {
             if (checkouted.getFilesTracked().containsKey(a)
                     && !info.head.getFilesTracked().containsKey(a)
                     && !info.stagingArea.keySet().contains(a)) {
@@ -699,20 +655,16 @@ public class Gitlet implements Serializable {
     public void branch(String s) {
         info = deserialization();
 
+        //Branch names are stored with a 16-bit length
+        if (!Utils.encodable(s)) {
+            System.out.println("Branch name too long.");
+            return;
+        }
         if (info.branches.containsKey(s)) {
             System.out.println("A branch with that name already exists.");
             return;
         } else {
             info.branches.put(s, info.head.getSHA1());
-            if (!info.splitpoints.containsKey(info.head.getSHA1())) {
-                ArrayList<String> newsplit = new ArrayList<>();
-                newsplit.add(info.currBranch);
-                newsplit.add(s);
-                info.splitpoints.put(info.head.getSHA1(), newsplit);
-            } else {
-                info.splitpoints.get(info.head.getSHA1()).add(info.currBranch);
-                info.splitpoints.get(info.head.getSHA1()).add(s);
-            }
         }
 
         serialization(info);
@@ -728,13 +680,6 @@ public class Gitlet implements Serializable {
             System.out.println("A branch with that name does not exist.");
         } else {
             info.branches.remove(s);
-            for (String a : info.splitpoints.keySet()) {
-                for (String i : info.splitpoints.get(a)) {
-                    if (i.equals(s)) {
-                        info.splitpoints.remove(a);
-                    }
-                }
-            }
         }
 
         serialization(info);
@@ -743,17 +688,8 @@ public class Gitlet implements Serializable {
     public void reset(String s) {
         info = deserialization();
 
-        if (s.length() != 6) {
-            for (String i : info.allCommits) {
-                if (i.substring(0, s.length()).equals(s)) {
-                    s = i;
-                    break;
-                }
-            }
-        }
-
-        if (!info.allCommits.contains(s)) {
-            System.out.println("No commit with that id exists.");
+        s = resolveCommit(s);
+        if (s == null) {
             return;
         }
 
@@ -761,7 +697,7 @@ public class Gitlet implements Serializable {
         Commit checkouted = deserialization(s);
 
         File currentDir = new File("").getAbsoluteFile();
-        for (String a : Utils.plainFilenamesIn(currentDir)) {
+        for (String a : Utils.plainFilenamesUnder(currentDir)) {
             if (!info.head.getFilesTracked().containsKey(a)
                     && !info.stagingArea.containsKey(a)
                     && checkouted.getFilesTracked().containsKey(a)) {
@@ -772,33 +708,6 @@ public class Gitlet implements Serializable {
         }
 
         checkoutc(checkouted);
-        for (String a : info.splitpoints.keySet()) {
-            for (String i : info.splitpoints.get(a)) {
-                if (i.equals(info.currBranch)) {
-                    info.splitpoints.remove(a);
-                }
-            }
-        }
-        for (String a : info.splitpoints.keySet()) {
-            for (String i : info.splitpoints.get(a)) {
-                if (i.equals(s)) {
-                    int j = info.splitpoints.get(a).indexOf(i);
-                    if (j % 2 == 0) {
-                        ArrayList<String> newsplit = new ArrayList<>();
-                        newsplit.add(info.splitpoints.get(a).get(j + 1));
-                        newsplit.add(info.currBranch);
-                        info.splitpoints.put(a, newsplit);
-                    } else {
-                        ArrayList<String> newsplit = new ArrayList<>();
-                        newsplit.add(info.splitpoints.get(a).get(j - 1));
-                        newsplit.add(info.currBranch);
-                        info.splitpoints.put(a, newsplit);
-                    }
-                }
-            }
-        }
-
-
         info.head = checkouted;
         info.branches.replace(info.currBranch, s);
         info.stagingArea.clear();
@@ -809,55 +718,69 @@ public class Gitlet implements Serializable {
         serialization(info);
     }
 
+    //Make the working directory match commit c. Files the current commit
+    // tracks and c does not are deleted; when both commits have trees these
+    // are found by comparing the trees, skipping directories whose tree ids
+    // are equal. Every file c tracks is rewritten unless its working copy
+    // already holds c's blob, as the stat index tells without rehashing
+    // unchanged files, so local edits and deletions are undone as well.
+    // Writes run in parallel.
     public void checkoutc(Commit c) {
-
-        for (String i : info.head.getFilesTracked().keySet()) {
-            if (!c.getFilesTracked().containsKey(i)) {
-                info.removedFiles.add(i);
-                File f = new File(i);
-                f.delete();
+        HashMap<String, String> current = info.head.getFilesTracked();
+        HashMap<String, String> target = c.getFilesTracked();
+
+        List<String> toDelete = new ArrayList<>();
+        HashSet<String> changed = new HashSet<>();
+        if (info.head.getTree() != null && c.getTree() != null) {
+            Tree.diff(info.head.getTree(), c.getTree(), "", (path, oldID, newID) -> {
+                if (newID == null) {
+                    toDelete.add(path);
+                } else {
+                    changed.add(path);
+                }
+            });
+        } else {
+            for (String i : current.keySet()) {
+                if (!target.containsKey(i)) {
+                    toDelete.add(i);
+                }
+            }
+            for (String j : target.keySet()) {
+                if (!target.get(j).equals(current.get(j))) {
+                    changed.add(j);
+                }
             }
         }
+        List<String> toWrite = target.keySet().parallelStream()
+                .filter(j -> {
+                    File f = new File(j);
+                    return changed.contains(j)
+                            || !f.isFile()
+                            || !fileIDGenerator(f).equals(target.get(j));
+                })
+                .collect(Collectors.toList());
+
+        for (String i : toDelete) {
+            info.removedFiles.add(i);
+            Utils.deleteWorkingFile(new File(i));
+        }
 
-        for (String j : c.getFilesTracked().keySet()) {
-            File f = new File(j);
-            if (f.exists()) {
-                f.delete();
-            }
+        toWrite.parallelStream().forEach(j -> {
             try {
-                f.createNewFile();
-                File n = new File(".gitlet/blobs/" + c.getFilesTracked().get(j));
-                Utils.writeContents(f, Utils.readContents(n));
-            } catch (IOException e) {
+                ObjectStore.checkout(target.get(j), new File(j));
+            } catch (IllegalArgumentException e) {
                 System.out.println("checkoutf inside checkc wrong!");
             }
-        }
-    }
+        });
 
-    public String findsplitpoint(String s) {
-        String splitpoint = null;
-        for (String a : info.splitpoints.keySet()) {
-            for (String i : info.splitpoints.get(a)) {
-                if (i.equals(info.currBranch)) {
-                    int j = info.splitpoints.get(a).indexOf(i);
-                    if (j % 2 == 0) {
-                        if (info.splitpoints.get(a).get(j + 1).equals(s)) {
-                            splitpoint = a;
-                        }
-                    } else {
-                        if (info.splitpoints.get(a).get(j - 1).equals(s)) {
-                            splitpoint = a;
-                        }
-                    }
-                }
-            }
+        if (verbose) {
+            System.out.println(toWrite.size() + " files written, " + toDelete.size()
+                    + " deleted, " + (target.size() - toWrite.size()) + " unchanged.");
         }
-        return splitpoint;
     }
 
     public void merge(String s) {
         info = deserialization();
-        boolean nonexist = true;
         if (!info.stagingArea.isEmpty() || !info.toUntrack.isEmpty()) {
             System.out.println(" You have uncommitted changes.");
             return;
@@ -874,23 +797,36 @@ public class Gitlet implements Serializable {
         Commit currcommit = deserialization(currcommitID);
         String givencommitID = info.branches.get(s);
         Commit givencommit = deserialization(givencommitID);
-        String splitpoint = findsplitpoint(s);
-        Commit splitcommit = deserialization(splitpoint);
-        if (givencommitID.equals(splitpoint)) {
+        //Ancestry is answered by the commit graph, without reading commits
+        if (CommitGraph.isAncestor(givencommitID, currcommitID)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
         }
-        if (currcommitID.equals(splitpoint)) {
-            info.branches.replace(info.currBranch, splitpoint);
-            info.head = splitcommit;
+        if (CommitGraph.isAncestor(currcommitID, givencommitID)) {
+            for (String a : Utils.plainFilenamesUnder(new File("").getAbsoluteFile())) {
+                if (givencommit.getFilesTracked().containsKey(a)
+                        && !currcommit.getFilesTracked().containsKey(a)) {
+                    System.out.println("There is an untracked file in the way;"
+                            + " delete it or add it first.");
+                    return;
+                }
+            }
+            checkoutc(givencommit);
+            info.branches.replace(info.currBranch, givencommitID);
+            info.head = givencommit;
+            info.removedFiles.clear();
             System.out.println("Current branch fast-forwarded.");
+            serialization(info);
             return;
         }
-        HashMap<String, String> allpossible = new HashMap<>();
-        allpossible.putAll(currcommit.getFilesTracked());
-        allpossible.putAll(splitcommit.getFilesTracked());
-        allpossible.putAll(givencommit.getFilesTracked());
-        List<String> inside = Utils.plainFilenamesIn(new File("").getAbsoluteFile());
+        //The split point is a lowest common ancestor in the commit graph
+        String splitpoint = CommitGraph.mergeBase(currcommitID, givencommitID);
+        if (splitpoint == null) {
+            System.out.println("Given branch shares no history with the current branch.");
+            return;
+        }
+        Commit splitcommit = deserialization(splitpoint);
+        List<String> inside = Utils.plainFilenamesUnder(new File("").getAbsoluteFile());
 
         for (String i : inside) {
             if (!currcommit.getFilesTracked().containsKey(i)
@@ -901,138 +837,48 @@ public class Gitlet implements Serializable {
                 return;
             }
         }
-        for (String a : allpossible.keySet()) {
-            boolean cu = currcommit.getFilesTracked().containsKey(a);
-            boolean sp = splitcommit.getFilesTracked().containsKey(a);
-            boolean gi = givencommit.getFilesTracked().containsKey(a);
-            String x = currcommit.getFilesTracked().get(a);
-            String y = splitcommit.getFilesTracked().get(a);
-            String z = givencommit.getFilesTracked().get(a);
-            if (cu && sp && gi && x.equals(y) && !z.equals(y)) {
-                info.head = givencommit;
-                mergecheckout(a);
-                info.head = currcommit;
-                mergeadd(a);
-            } else if (!cu && !sp && gi) {
-                info.head = givencommit;
-                mergecheckout(a);
-                info.head = currcommit;
-                mergeadd(a);
-            } else if (sp && Objects.equals(x, y) && !gi) {
-                mergerm(a);
-            } else if (!Objects.equals(y, x) && !Objects.equals(y, z)) {
-                writecontent(currcommit.getFilesTracked().get(a),
-                        givencommit.getFilesTracked().get(a), a);
-
-                System.out.println("Encountered a merge conflict.");
-                nonexist = false;
-            }
+        //Decide what becomes of every file before touching any, then write
+        // the working files in parallel and stage the outcome in one go
+        TreeMap<String, Integer> plan = Merge.plan(currcommit.getFilesTracked(),
+                splitcommit.getFilesTracked(), givencommit.getFilesTracked());
+        Merge result;
+        try {
+            result = Merge.run(plan, currcommit.getFilesTracked(),
+                    splitcommit.getFilesTracked(), givencommit.getFilesTracked());
+        } catch (IllegalArgumentException e) {
+            System.out.println("merge wrong!");
+            return;
         }
-        if (nonexist) {
-            mergecommit("Merged " + info.currBranch + " with " + s + ".");
+        for (String a : result.taken) {
+            info.stagingArea.put(a, givencommit.getFilesTracked().get(a));
         }
-        serialization(info);
-    }
-
-    public static void writecontent(String a, String b, String c) {
-        try {
-            PrintWriter writer = new PrintWriter(c, "UTF-8");
-            writer.println("<<<<<<< HEAD");
-            if (a != null) {
-                Scanner input1 = new Scanner(new File(".gitlet/blobs/" + a));
-                while (input1.hasNextLine()) {
-                    writer.println(input1.nextLine());
-                }
-            }
-            writer.println("=======");
-            if (b != null) {
-                Scanner input2 = new Scanner(new File(".gitlet/blobs/" + b));
-                while (input2.hasNextLine()) {
-                    writer.println(input2.nextLine());
-                }
-            }
-            writer.println(">>>>>>>");
-            writer.close();
-        } catch (IOException e) {
-            System.out.println("Printing contents wrong!");
+        for (String a : result.deleted) {
+            info.removedFiles.add(a);
+            info.toUntrack.add(a);
         }
-    }
-
-    public void mergecheckout(String s) {
-
-        if (!info.head.getFilesTracked().containsKey(s)) {
-            System.out.println("File does not exist in that commit.");
-            return;
-        } else {
-            File f = new File(s);
-            if (f.exists()) {
-                f.delete();
-            }
-
-            try {
-                f.createNewFile();
-                File n = new File(".gitlet/blobs/" + info.head.getFilesTracked().get(s));
-                Utils.writeContents(f, Utils.readContents(n));
-            } catch (IOException e) {
-                System.out.println("checkoutf wrong!");
-            }
+        //Files merged without conflicts are new versions, hashed and stored
+        // like any other added file
+        addFiles(result.combined);
+        for (String a : result.conflicted) {
+            System.out.println("Encountered a merge conflict.");
         }
-
-    }
-
-    public void mergerm(String m) {
-
-
-        if (info.head.getFilesTracked().containsKey(m)) {
-            File toRemove = new File(m);
-            if (toRemove.exists()) {
-                toRemove.delete();
-            }
-
-            if (info.stagingArea.containsKey(m)) {
-                info.stagingArea.remove(m);
-                File rmFromSA = new File(".gitlet/stagingarea/" + info.stagingArea.get(m));
-                rmFromSA.delete();
-            }
-
-            info.removedFiles.add(m);
-
-
-            //System.out.println(info.removedFiles);
-
-            info.toUntrack.add(m);
-        } else {
-
-            if (info.stagingArea.containsKey(m)) {
-                info.stagingArea.remove(m);
-                File rmFromSA = new File(".gitlet/stagingarea/" + info.stagingArea.get(m));
-                rmFromSA.delete();
-            } else {
-                System.out.println("No reason to remove the file.");
-            }
-
+        if (result.conflicted.isEmpty()) {
+            mergecommit("Merged " + info.currBranch + " with " + s + ".", givencommitID);
         }
+        serialization(info);
     }
 
-    public void mergecommit(String m) {
+    public void mergecommit(String m, String merged) {
 
         //Check if there is need to make the commit. If there is stagingArea is empty and there is
         //nothing to untrack, there is no need to commit
         if (info.stagingArea.size() > 0 || info.toUntrack.size() > 0) {
-            //Make copies of every file in the staging area
-            // and put them into .gitlet/blobs directory
+            //Staged files are already in .gitlet/blobs; only copies staged
+            // by older versions of gitlet still have to be moved there
             for (String a : info.stagingArea.keySet()) {
                 try {
-                    String newPath = ".gitlet/blobs/" + info.stagingArea.get(a);
-                    File newFile = new File(newPath);
-                    newFile.createNewFile();
-
-                    String oldPath = ".gitlet/stagingarea/" + info.stagingArea.get(a);
-                    File oldFile = new File(oldPath);
-
-                    Utils.writeContents(newFile, Utils.readContents(oldFile));
-
-                } catch (IOException e) {
+                    ObjectStore.promote(info.stagingArea.get(a));
+                } catch (IllegalArgumentException e) {
                     System.out.println("Commit wrong 1");
                 }
             }
@@ -1040,8 +886,11 @@ public class Gitlet implements Serializable {
             Commit c = new Commit(m);
             //Set the parent of the new commit to the previous commit's SHA1ID
             c.setParent(info.head.getSHA1());
-            //Set the new commit's trackedFiles to the previous commit's trackedFiles
-            c.setFilesTracked(info.head.getFilesTracked());
+            //and record the head of the branch merged in as its second parent
+            c.setSecondParent(merged);
+            //Start the new commit's trackedFiles from a copy of the previous
+            // commit's, which must not change along with it
+            c.setFilesTracked(new HashMap<>(info.head.getFilesTracked()));
 
             //For everything in the staging area,
             // if it already exists in the previous commit,
@@ -1059,6 +908,9 @@ public class Gitlet implements Serializable {
                     c.getFilesTracked().remove(b);
                 }
             }
+            //Build the new commit's tree from the previous one, rewriting
+            // only the directories that contain changes
+            c.setTree(commitTree(info.head));
             //Once message, filesTracked, parent,
             // time are all set for the commit, we can generate the SHA1 ID.
             c.setSHA1();
@@ -1067,14 +919,6 @@ public class Gitlet implements Serializable {
             //Update branches field
             info.branches.replace(info.currBranch, info.head.getSHA1());
 
-            //Update allCommits field
-            info.allCommits.add(c.getSHA1());
-
-            //Clear the stagingarea folder inside .gitlet.
-            for (String a : info.stagingArea.keySet()) {
-                File f = new File(".gitlet/stagingarea/" + info.stagingArea.get(a));
-                f.delete();
-            }
             //Clear stagingArea HashMap;
             info.stagingArea.clear();
 
@@ -1082,91 +926,119 @@ public class Gitlet implements Serializable {
 
             info.toUntrack.clear();
 
+            //Serialize the commit we just created
+            serialization(c);
+
         } else {
             System.out.println("No changes added to the commit.");
         }
     }
 
-    public void mergeadd(String fn) {
-        File f = new File(fn);
-        if (f.exists()) {
-            //If this file is marked to be untracked, remove the mark
-            if (info.toUntrack.contains(fn)) {
-                info.toUntrack.remove(fn);
-                info.removedFiles.remove(fn);
-            } else {
-
-                int size = info.stagingArea.size();
-                //if this file is already in the staging area, check whether it has been modified
-                if (info.stagingArea.containsKey(fn)) {
-
-                    String newID = fileIDGenerator(f);
-                    String oldID = info.stagingArea.get(fn);
-
-                    if (!newID.equals(oldID)) {
-                        //Delete the old file in .gitlet/stagingarea folder and create the new file
-                        try {
-                            File oldFile = new File(".gitlet/stagingarea/"
-                                    + info.stagingArea.get(fn));
-                            oldFile.delete();
-                            File newFile = new File(".gitlet/stagingarea/" + newID);
-                            newFile.createNewFile();
-                            Utils.writeContents(newFile, Utils.readContents(f));
-
-
-                            //replace the information in the stagingArea field
-                            info.stagingArea.remove(fn);
-                            info.stagingArea.put(fn, newID);
-                        } catch (IOException e) {
-                            System.out.println("Add wrong 1");
-                        }
-                    }
-                } else {
-                    //If this file not tracked in the current commit, add it to staging area
-                    if (!info.head.getFilesTracked().containsKey(fn)) {
-                        try {
-                            //get the SHA1ID for that file
-                            String id = fileIDGenerator(f);
-                            //Make a copy of that file and store it in the staging area
-                            // folder with its SHA1ID as its name
-                            String path = ".gitlet/stagingarea/" + id;
-                            File newFile = new File(path);
-                            newFile.createNewFile();
-                            Utils.writeContents(newFile, Utils.readContents(f));
-
-                            //Store information about this file into
-                            // stagingarea field in info package
-                            info.stagingArea.put(fn, id);
-                        } catch (IOException e) {
-                            System.out.println("Add wrong 2");
-                        }
-                    } else {
-                        //Get the SHA1ID of the version tracked by the most recent commit and
-                        // the current version in the working directory
-                        String newID = fileIDGenerator(f);
-                        String oldID = info.head.getFilesTracked().get(fn);
-                        //If the IDs are different, this file has been modified.
-                        // Add it to staging area.
-                        if (!newID.equals(oldID)) {
-                            try {
-                                File newFile = new File(".gitlet/stagingarea/" + newID);
-                                newFile.createNewFile();
-                                Utils.writeContents(newFile, Utils.readContents(f));
-
-                                info.stagingArea.put(fn, newID);
-                            } catch (IOException e) {
-                                System.out.println("Add wrong 3");
-                            }
-                        }
-                    }
+    //Print unified diffs of the files that differ between two sides:
+    // with no commits given, the staged files and the working directory;
+    // with one, that commit and the working directory; with two, the two
+    // commits. Commits may be named by branch or by (abbreviated) id.
+    // Files whose blob ids agree are skipped without being read, and
+    // contents are mapped rather than read where they can be.
+    public void diff(String... commits) {
+        info = deserialization();
+        Map<String, String> from;
+        Map<String, String> to = null;
+        if (commits.length == 0) {
+            from = stagedFiles();
+        } else {
+            from = commitFiles(commits[0]);
+            if (from == null) {
+                return;
+            }
+            if (commits.length == 2) {
+                to = commitFiles(commits[1]);
+                if (to == null) {
+                    return;
                 }
             }
-        } else {
-            System.out.println("File does not exist!");
+        }
+        boolean working = to == null;
+        if (working) {
+            //Ids of the working copies of the files gitlet tracks or stages
+            to = new HashMap<>();
+            LinkedHashSet<String> paths = new LinkedHashSet<>(from.keySet());
+            paths.addAll(stagedFiles().keySet());
+            for (String a : paths) {
+                File f = new File(a);
+                if (f.isFile()) {
+                    to.put(a, fileIDGenerator(f));
+                }
+            }
+        }
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        BufferedOutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        try {
+            for (String a : paths) {
+                String x = from.get(a);
+                String y = to.get(a);
+                if (Objects.equals(x, y)) {
+                    continue;
+                }
+                ByteBuffer old = x == null ? null : ObjectStore.map(x);
+                ByteBuffer now = y == null ? null
+                        : working ? Utils.mapContents(new File(a)) : ObjectStore.map(y);
+                Diff.unified(a, old, now, out);
+            }
+            out.flush();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("diff wrong!");
         }
     }
-}
-
 
+    //The files of the commit named by s, or null, having said why, if it
+    // names none
+    private HashMap<String, String> commitFiles(String s) {
+        String id = info.branches.get(s);
+        if (id == null) {
+            id = resolveCommit(s);
+            if (id == null) {
+                return null;
+            }
+        }
+        Commit c = deserialization(id);
+        return c == null ? null : c.getFilesTracked();
+    }
 
+    //The files the next commit would have if it were made now
+    private HashMap<String, String> stagedFiles() {
+        HashMap<String, String> files = new HashMap<>(info.head.getFilesTracked());
+        files.putAll(info.stagingArea);
+        files.keySet().removeAll(info.toUntrack);
+        return files;
+    }
 
+    public void gc() {
+        //Move commits left as separate files by older versions into the
+        // commit pack
+        int commits = CommitStore.repack();
+        //Collect the versions each file has had, oldest first, so that
+        // each can be stored as a delta from the one before it
+        HashMap<String, ArrayList<String>> histories = new HashMap<>();
+        CommitStore.scan(c -> {
+            for (Map.Entry<String, String> e : c.getFilesTracked().entrySet()) {
+                ArrayList<String> versions =
+                        histories.computeIfAbsent(e.getKey(), k -> new ArrayList<>());
+                if (versions.isEmpty()
+                        || !versions.get(versions.size() - 1).equals(e.getValue())) {
+                    versions.add(e.getValue());
+                }
+            }
+        });
+        try {
+            int[] packed = ObjectStore.repack(histories.values());
+            if (verbose) {
+                System.out.println(packed[0] + " objects packed, " + packed[1]
+                        + " as deltas; " + commits + " commits moved into the pack.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("gc wrong!");
+        }
+    }
+}
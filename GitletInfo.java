@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** The repository state every Gitlet command works on: the head commit,
+ *  branches, staging area and bookkeeping sets.  It is persisted by
+ *  {@link StateJournal}, which records only what changed since the state
+ *  was last loaded or saved.
+ */
+class GitletInfo {
+
+    //The current commit user is working on
+    Commit head;
+
+    //The current branch we are on
+    String currBranch;
+
+    //All branches stored in this .gitlet
+    //Key is branch name, Value is the SHA1ID of the head commit in that branch
+    HashMap<String, String> branches;
+
+    //Files that are staged for commit
+    HashMap<String, String> stagingArea;
+
+    //Files that are currently being tracked but to be untracked in the next commit
+    HashSet<String> toUntrack;
+
+    //all removed files
+    HashSet<String> removedFiles;
+
+    //Split points recorded by older versions of gitlet, which now find
+    // them in the commit graph; kept so that their states still load
+    HashMap<String, ArrayList<String>> splitpoints;
+
+
+    GitletInfo() {
+        head = null;
+        currBranch = null;
+        branches = new HashMap<>();
+        stagingArea = new HashMap<>();
+        toUntrack = new HashSet<>();
+        removedFiles = new HashSet<>();
+        splitpoints = new HashMap<>();
+    }
+
+    public void setHead(Commit h) {
+        head = h;
+    }
+
+    public void setCurrBranch(String b) {
+        currBranch = b;
+    }
+
+    public void setBranches(HashMap<String, String> b) {
+        branches = b;
+    }
+
+    public void setStagingArea(HashMap<String, String> s) {
+        stagingArea = s;
+    }
+
+    public void setToUntrack(HashSet<String> r) {
+        toUntrack = r;
+    }
+
+    /** Return a copy of this state whose collections can be compared
+     *  against later. */
+    GitletInfo snapshot() {
+        GitletInfo s = new GitletInfo();
+        s.head = head;
+        s.currBranch = currBranch;
+        s.branches = new HashMap<>(branches);
+        s.stagingArea = new HashMap<>(stagingArea);
+        s.toUntrack = new HashSet<>(toUntrack);
+        s.removedFiles = new HashSet<>(removedFiles);
+        for (String a : splitpoints.keySet()) {
+            s.splitpoints.put(a, new ArrayList<>(splitpoints.get(a)));
+        }
+        return s;
+    }
+}
@@ -0,0 +1,299 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 codec in the style of LZ4.  The input is cut into blocks
+ *  of BLOCK bytes, each written as its length, the length of its
+ *  encoding (0 if it is stored as is because encoding did not shrink
+ *  it), and the encoding.  A zero length ends the stream.
+ *
+ *  A block's encoding is a series of sequences, each a token byte whose
+ *  high four bits hold the number of literal bytes that follow and whose
+ *  low four bits hold the length of a match, less MIN_MATCH; a field of
+ *  15 continues in following bytes, each added to it, until one is not
+ *  255.  The literals come next, and then the two-byte little-endian
+ *  distance back to the match.  The last sequence of a block has
+ *  literals only.
+ */
+class LZCodec implements Codec {
+
+    private static final int BLOCK = 1 << 16;
+    private static final int MIN_MATCH = 4;
+    /** The number of bytes at the end of a block that are always
+     *  literals, which keeps matches from reading past it. */
+    private static final int LAST_LITERALS = 5;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_DISTANCE = 0xffff;
+
+    @Override
+    public int id() {
+        return 2;
+    }
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+        return new Encoder(out);
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+        return new Decoder(in);
+    }
+
+    /** Encode the first N bytes of SRC into DST, which must hold at least
+     *  maxEncodedLength(N) bytes, and return the length of the
+     *  encoding. */
+    static int compress(byte[] src, int n, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0, i = 0, o = 0;
+        int limit = n - LAST_LITERALS - MIN_MATCH;
+        while (i <= limit) {
+            int word = readInt(src, i);
+            int h = (word * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_DISTANCE || readInt(src, ref) != word) {
+                i += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (i + len < n - LAST_LITERALS && src[ref + len] == src[i + len]) {
+                len += 1;
+            }
+            o = writeSequence(src, anchor, i - anchor, dst, o, len - MIN_MATCH);
+            dst[o++] = (byte) (i - ref);
+            dst[o++] = (byte) ((i - ref) >>> 8);
+            o = writeLength(dst, o, len - MIN_MATCH);
+            i += len;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, n - anchor, dst, o, 0);
+    }
+
+    /** Decode the N bytes of SRC into DST, which holds the whole block,
+     *  and return the length of the result. */
+    static int decompress(byte[] src, int n, byte[] dst) {
+        int i = 0, o = 0;
+        while (i < n) {
+            int token = src[i++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src[i++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, i, dst, o, literals);
+            i += literals;
+            o += literals;
+            if (i >= n) {
+                break;
+            }
+            int distance = (src[i] & 0xff) | (src[i + 1] & 0xff) << 8;
+            i += 2;
+            int len = token & 15;
+            if (len == 15) {
+                int b;
+                do {
+                    b = src[i++] & 0xff;
+                    len += b;
+                } while (b == 255);
+            }
+            len += MIN_MATCH;
+            if (distance == 0 || distance > o) {
+                throw new IllegalArgumentException("corrupt object");
+            }
+            for (int from = o - distance, end = o + len; o < end; o += 1, from += 1) {
+                dst[o] = dst[from];
+            }
+        }
+        return o;
+    }
+
+    /** Returns a bound on the length of the encoding of N bytes. */
+    static int maxEncodedLength(int n) {
+        return n + n / 255 + 16;
+    }
+
+    /** Write to DST at O a token for LITERALS literals followed by a
+     *  match of encoded length MATCH, the start of the literals' length,
+     *  and the literals, which start at START in SRC; return the new
+     *  end of DST. */
+    private static int writeSequence(byte[] src, int start, int literals,
+                                     byte[] dst, int o, int match) {
+        dst[o++] = (byte) (Math.min(literals, 15) << 4 | Math.min(match, 15));
+        o = writeLength(dst, o, literals);
+        System.arraycopy(src, start, dst, o, literals);
+        return o + literals;
+    }
+
+    /** Write the continuation of the 4-bit length field LEN, if any, to
+     *  DST at O and return the new end of DST. */
+    private static int writeLength(byte[] dst, int o, int len) {
+        if (len < 15) {
+            return o;
+        }
+        for (len -= 15; len >= 255; len -= 255) {
+            dst[o++] = (byte) 255;
+        }
+        dst[o++] = (byte) len;
+        return o;
+    }
+
+    /** Returns the four bytes of B at I as an int. */
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+            | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    /** Encodes what is written to it, a block at a time. */
+    private static class Encoder extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] block = new byte[BLOCK];
+        private final byte[] encoded = new byte[maxEncodedLength(BLOCK)];
+        private int size;
+
+        Encoder(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == BLOCK) {
+                writeBlock();
+            }
+            block[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == BLOCK) {
+                    writeBlock();
+                }
+                int n = Math.min(len, BLOCK - size);
+                System.arraycopy(b, off, block, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeBlock();
+            out.writeInt(0);
+            out.close();
+        }
+
+        /** Write out the buffered block, if it is not empty. */
+        private void writeBlock() throws IOException {
+            if (size == 0) {
+                return;
+            }
+            int n = compress(block, size, encoded);
+            out.writeInt(size);
+            if (n < size) {
+                out.writeInt(n);
+                out.write(encoded, 0, n);
+            } else {
+                out.writeInt(0);
+                out.write(block, 0, size);
+            }
+            size = 0;
+        }
+    }
+
+    /** Decodes its input a block at a time. */
+    private static class Decoder extends InputStream {
+        private final DataInputStream in;
+        private final byte[] block = new byte[BLOCK];
+        private final byte[] encoded = new byte[maxEncodedLength(BLOCK)];
+        private int pos, size;
+        private boolean done;
+
+        Decoder(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, size - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /** Make sure a decoded byte is available, returning false at the
+         *  end of the stream. */
+        private boolean fill() throws IOException {
+            if (pos < size) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            try {
+                int n = in.readInt();
+                if (n == 0) {
+                    done = true;
+                    return false;
+                }
+                if (n < 0 || n > BLOCK) {
+                    throw new IOException("corrupt object");
+                }
+                int len = in.readInt();
+                if (len < 0 || len > encoded.length) {
+                    throw new IOException("corrupt object");
+                } else if (len == 0) {
+                    in.readFully(block, 0, n);
+                } else {
+                    in.readFully(encoded, 0, len);
+                    if (decompress(encoded, len, block) != n) {
+                        throw new IOException("corrupt object");
+                    }
+                }
+                pos = 0;
+                size = n;
+                return true;
+            } catch (EOFException excp) {
+                throw new IOException("truncated object");
+            } catch (IllegalArgumentException
+                     | IndexOutOfBoundsException excp) {
+                throw new IOException("corrupt object");
+            }
+        }
+    }
+}
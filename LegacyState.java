@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Reads the state of repositories made by older versions of gitlet,
+ *  which serialized it to .gitlet/info.ser as a Gitlet.GitletInfo, an
+ *  inner class of Gitlet that no longer exists.  StateJournal reads it
+ *  once, when a repository has no checkpoint yet, and writes the first
+ *  checkpoint from it; from then on the repository is like any other.
+ *  Its commits and staged files stay where those versions put them, and
+ *  CommitStore and ObjectStore read them from there.
+ */
+class LegacyState {
+
+    /** The serialized state. */
+    static final File FILE = new File(".gitlet/info.ser");
+
+    /** Stand-ins for the old classes, with the same serialized fields.
+     *  Deserialization matches fields by name, so these must keep them,
+     *  down to the reference to the enclosing Gitlet, this$0.  Their
+     *  serialVersionUIDs need not match the old classes', as Input reads
+     *  with their own descriptors. */
+    @SuppressWarnings("unused")
+    private static class Info implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Commit head;
+        private String currBranch;
+        private HashMap<String, String> branches;
+        private HashMap<String, String> stagingArea;
+        private HashSet<String> toUntrack;
+        private HashSet<String> allCommits;
+        private HashSet<String> removedFiles;
+        private HashMap<String, ArrayList<String>> splitpoints;
+        private Object this$0;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Outer implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Object info;
+    }
+
+    /** An input stream that reads the old classes as their stand-ins.  It
+     *  replaces their descriptors rather than their names, which keeps the
+     *  serialVersionUIDs of the old classes from mattering. */
+    private static class Input extends ObjectInputStream {
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            switch (desc.getName()) {
+            case "gitlet.Gitlet$GitletInfo":
+                return ObjectStreamClass.lookup(Info.class);
+            case "gitlet.Gitlet":
+                return ObjectStreamClass.lookup(Outer.class);
+            default:
+                return desc;
+            }
+        }
+    }
+
+    /** Returns the state in FILE. */
+    static GitletInfo read() {
+        Info old;
+        try (Input in = new Input(new FileInputStream(FILE))) {
+            old = (Info) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException
+                 excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Stats.read(FILE.length());
+        GitletInfo info = new GitletInfo();
+        info.head = old.head;
+        info.currBranch = old.currBranch;
+        info.branches.putAll(old.branches);
+        info.stagingArea.putAll(old.stagingArea);
+        info.toUntrack.addAll(old.toUntrack);
+        info.removedFiles.addAll(old.removedFiles);
+        if (old.splitpoints != null) {
+            info.splitpoints.putAll(old.splitpoints);
+        }
+        return info;
+    }
+}
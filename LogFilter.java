@@ -0,0 +1,91 @@
+package gitlet;
+
+/** Limits on the commits shown by log and global-log, as given by the
+ *  options -n COUNT, --since DATE and --until DATE.  A DATE is either
+ *  yyyy-MM-dd or yyyy-MM-dd HH:mm:ss; a bare --since date means the
+ *  start of that day and a bare --until date its end.  Commit times have
+ *  the same form, so they are compared as strings.
+ */
+class LogFilter {
+
+    /** Number of commits that may still be shown. */
+    private int remaining = Integer.MAX_VALUE;
+    /** Earliest and latest times shown, or null for no limit. */
+    private String since, until;
+
+    /** Returns the filter given by the options ARGS[START..], or null,
+     *  having said what is wrong, if they are not valid. */
+    static LogFilter parse(String[] args, int start) {
+        LogFilter f = new LogFilter();
+        for (int i = start; i < args.length; i += 1) {
+            if (i + 1 == args.length) {
+                System.out.println("Incorrect operands.");
+                return null;
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-n": {
+                    try {
+                        f.remaining = Integer.parseInt(value);
+                    } catch (NumberFormatException excp) {
+                        f.remaining = -1;
+                    }
+                    if (f.remaining < 0) {
+                        System.out.println("Invalid count " + value + ".");
+                        return null;
+                    }
+                    break;
+                }
+                case "--since": {
+                    f.since = time(value, " 00:00:00");
+                    if (f.since == null) {
+                        return null;
+                    }
+                    break;
+                }
+                case "--until": {
+                    f.until = time(value, " 23:59:59");
+                    if (f.until == null) {
+                        return null;
+                    }
+                    break;
+                }
+                default: {
+                    System.out.println("Incorrect operands.");
+                    return null;
+                }
+            }
+            i += 1;
+        }
+        return f;
+    }
+
+    /** Returns true iff a commit made at TIME is to be shown. */
+    boolean shows(String time) {
+        return (since == null || time.compareTo(since) >= 0)
+            && (until == null || time.compareTo(until) <= 0);
+    }
+
+    /** Note that a commit has been shown. */
+    void shown() {
+        remaining -= 1;
+    }
+
+    /** Returns true iff nothing more is to be shown from a walk that is
+     *  at a commit made at TIME and goes back in time. */
+    boolean done(String time) {
+        return remaining <= 0 || (since != null && time.compareTo(since) < 0);
+    }
+
+    /** Returns DATE as a full time, appending DAYTIME if it is only a
+     *  date, or null, having said so, if it is neither. */
+    private static String time(String date, String dayTime) {
+        if (date.matches("\\d{4}-\\d\\d-\\d\\d")) {
+            return date + dayTime;
+        } else if (date.matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d")) {
+            return date;
+        }
+        System.out.println("Invalid date " + date + ".");
+        return null;
+    }
+}
@@ -1,5 +1,14 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author
  */
@@ -13,19 +22,17 @@ public class Main {
         }
     }
 
-    public static void logSub(int c, Gitlet g) {
-        if (c != 1) {
-            System.out.println("Incorrect operands.");
-        } else {
-            g.log();
+    public static void logSub(String[] args, Gitlet g) {
+        LogFilter filter = LogFilter.parse(args, 1);
+        if (filter != null) {
+            g.log(filter);
         }
     }
 
-    public static void globallogSub(int c, Gitlet g) {
-        if (c != 1) {
-            System.out.println("Incorrect operands.");
-        } else {
-            g.globallog();
+    public static void globallogSub(String[] args, Gitlet g) {
+        LogFilter filter = LogFilter.parse(args, 1);
+        if (filter != null) {
+            g.globallog(filter);
         }
     }
 
@@ -37,20 +44,94 @@ public class Main {
         }
     }
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Apply the options (arguments starting with "-") that precede the
+     *  command in ARGS to G, and return the remaining arguments. */
+    public static String[] options(String[] args, Gitlet g) {
+        int i;
+        for (i = 0; i < args.length && args[i].startsWith("-"); i += 1) {
+            switch (args[i]) {
+                case "-v":
+                case "--verbose": {
+                    g.setVerbose(true);
+                    break;
+                }
+                case "--stats": {
+                    Stats.reportTo("");
+                    break;
+                }
+                default: {
+                    if (args[i].startsWith("--stats-json=")) {
+                        Stats.reportTo(args[i].substring(
+                            "--stats-json=".length()));
+                        break;
+                    }
+                    System.out.println("Unknown option " + args[i] + ".");
+                }
+            }
+        }
+        return Arrays.copyOfRange(args, i, args.length);
+    }
+
+    /** Usage: java gitlet.Main [OPTIONS] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  The command is passed to the gitlet
+     *  daemon if one is running, and is otherwise run here. */
     public static void main(String... args) {
-        Gitlet mygitlet = new Gitlet();
+        int i;
+        for (i = 0; i < args.length && args[i].startsWith("-"); i += 1) {
+            continue;
+        }
+        boolean startDaemon = i == args.length - 1 && args[i].equals("daemon");
+        if (i < args.length && !startDaemon && Daemon.SOCKET.exists()) {
+            byte[] input = null;
+            if (i == args.length - 1 && args[i].equals("batch")) {
+                try {
+                    input = System.in.readAllBytes();
+                } catch (IOException excp) {
+                    System.out.println("batch: " + excp.getMessage());
+                    return;
+                }
+                System.setIn(new ByteArrayInputStream(input));
+            }
+            if (Daemon.forward(args, input)) {
+                return;
+            }
+        }
+        run(args);
+    }
+
+    /** Run the command ARGS, as for main, in this process. */
+    public static void run(String... args) {
+        run(new Gitlet(), args);
+    }
+
+    /** Run the command ARGS, as for main, on MYGITLET. */
+    static void run(Gitlet mygitlet, String... args) {
+        args = options(args, mygitlet);
+        if (args.length == 0) {
+            System.out.println("Please enter a command.");
+            Stats.reportTo(null);
+            return;
+        }
+        Stats.start(String.join(" ", args));
+        try {
+            dispatch(mygitlet, args);
+        } finally {
+            Stats.finish();
+        }
+    }
+
+    /** Run the command ARGS, without options, on MYGITLET. */
+    private static void dispatch(Gitlet mygitlet, String... args) {
         switch (args[0]) {
             case "init": {
                 initSub(args.length, mygitlet);
                 break;
             }
             case "add": {
-                if (args.length != 2) {
+                if (args.length < 2) {
                     System.out.println("Incorrect operands.");
                 } else {
-                    mygitlet.add(args[1]);
+                    mygitlet.add(Arrays.copyOfRange(args, 1, args.length));
                 }
                 break;
             }
@@ -67,15 +148,25 @@ public class Main {
                 break;
             }
             case "log": {
-                logSub(args.length, mygitlet);
+                logSub(args, mygitlet);
                 break;
             }
             case "global-log": {
-                globallogSub(args.length, mygitlet);
+                globallogSub(args, mygitlet);
                 break;
             }
             case "find": {
-                mygitlet.find(args[1]);
+                if (args.length == 2) {
+                    mygitlet.find(args[1]);
+                } else if (args.length == 3 && (args[1].equals("-s")
+                        || args[1].equals("--substring"))) {
+                    mygitlet.find(args[2], "substring");
+                } else if (args.length == 3 && (args[1].equals("-w")
+                        || args[1].equals("--words"))) {
+                    mygitlet.find(args[2], "words");
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
                 break;
             }
             case "status": {
@@ -116,6 +207,47 @@ public class Main {
                 mygitlet.merge(args[1]);
                 break;
             }
+            case "daemon": {
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else if (args.length == 2 && args[1].equals("stop")) {
+                    System.out.println("No gitlet daemon is running.");
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            }
+            case "batch": {
+                if (args.length == 1) {
+                    Batch.run(new InputStreamReader(System.in,
+                            StandardCharsets.UTF_8));
+                } else if (args.length == 2) {
+                    try (Reader in = Files.newBufferedReader(Paths.get(args[1]))) {
+                        Batch.run(in);
+                    } catch (IOException excp) {
+                        System.out.println("Cannot read " + args[1] + ".");
+                    }
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            }
+            case "diff": {
+                if (args.length > 3) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    mygitlet.diff(Arrays.copyOfRange(args, 1, args.length));
+                }
+                break;
+            }
+            case "gc": {
+                if (args.length != 1) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    mygitlet.gc();
+                }
+                break;
+            }
             default: { }
         }
     }
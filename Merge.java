@@ -0,0 +1,294 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Three-way merges of the files of two commits against their split
+ *  point.  A merge is planned by a pure first pass that decides, from
+ *  the three versions of each file, what is to become of it, and is then
+ *  carried out by deleting files one by one and then writing working
+ *  files in parallel on a fork-join pool, whose idle workers steal files
+ *  from busy ones.  Deletions come first because deleting a file also
+ *  removes the directories it leaves empty, which would race with
+ *  writes into them.  Nothing here touches
+ *  the staging area: the caller stages the outcome in one go.
+ *
+ *  A file changed differently on both sides is merged line by line
+ *  against its version at the split point, in the manner of diff3:
+ *  changes to separate parts of the file are combined, and only regions
+ *  changed differently on both sides are marked as conflicts.  That
+ *  needs all three versions in memory, so a file with a version larger
+ *  than MAX_LINE_MERGE bytes is instead marked as one conflict between
+ *  the whole of both sides, which are streamed.
+ */
+class Merge {
+
+    /** What a plan does with a file: check out the given version, delete
+     *  it, or combine the two versions. */
+    static final int TAKE = 1, DELETE = 2, COMBINE = 3;
+
+    /** Largest version of a file, in bytes, that is merged line by
+     *  line. */
+    static final int MAX_LINE_MERGE = 16 << 20;
+
+    private static final byte[] OURS_MARKER = bytes("<<<<<<< HEAD\n");
+    private static final byte[] SEPARATOR = bytes("=======\n");
+    private static final byte[] THEIRS_MARKER = bytes(">>>>>>>\n");
+
+    /** Paths whose given version was checked out, that were deleted,
+     *  that were combined without conflicts, and that have conflicts. */
+    final TreeSet<String> taken = new TreeSet<>(), deleted = new TreeSet<>(),
+        combined = new TreeSet<>(), conflicted = new TreeSet<>();
+
+    /** Returns what is to be done with each path, by name, to merge the
+     *  files GIVEN into CURRENT, both descended from the files SPLIT.
+     *  Paths left as they are in CURRENT are omitted. */
+    static TreeMap<String, Integer> plan(Map<String, String> current,
+                                         Map<String, String> split,
+                                         Map<String, String> given) {
+        TreeMap<String, Integer> plan = new TreeMap<>();
+        TreeSet<String> paths = new TreeSet<>(current.keySet());
+        paths.addAll(split.keySet());
+        paths.addAll(given.keySet());
+        for (String a : paths) {
+            String x = current.get(a), y = split.get(a), z = given.get(a);
+            if (Objects.equals(x, y) && z != null && !z.equals(y)) {
+                plan.put(a, TAKE);
+            } else if (y != null && y.equals(x) && z == null) {
+                plan.put(a, DELETE);
+            } else if (!Objects.equals(y, x) && !Objects.equals(y, z)
+                       && !Objects.equals(x, z)) {
+                plan.put(a, COMBINE);
+            }
+        }
+        return plan;
+    }
+
+    /** Carry out PLAN, made by plan from CURRENT, SPLIT and GIVEN, on the
+     *  working directory, and return what became of each path. */
+    static Merge run(TreeMap<String, Integer> plan,
+                     Map<String, String> current, Map<String, String> split,
+                     Map<String, String> given) {
+        Merge result = new Merge();
+        ArrayList<String> paths = new ArrayList<>();
+        for (String a : plan.keySet()) {
+            if (plan.get(a) == DELETE) {
+                Utils.deleteWorkingFile(new File(a));
+                result.deleted.add(a);
+            } else {
+                paths.add(a);
+            }
+        }
+        boolean[] clean = new boolean[paths.size()];
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                materialize(0, paths.size());
+            }
+
+            /** Write the files PATHS[FROM..TO), splitting the range until
+             *  each task has one file. */
+            private void materialize(int from, int to) {
+                if (to - from > 1) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(task(from, mid), task(mid, to));
+                    return;
+                }
+                for (int i = from; i < to; i += 1) {
+                    String a = paths.get(i);
+                    clean[i] = apply(a, plan.get(a), current.get(a),
+                                     split.get(a), given.get(a));
+                }
+            }
+
+            private RecursiveAction task(int from, int to) {
+                return new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        materialize(from, to);
+                    }
+                };
+            }
+        });
+        for (int i = 0; i < paths.size(); i += 1) {
+            String a = paths.get(i);
+            if (plan.get(a) == TAKE) {
+                result.taken.add(a);
+            } else {
+                (clean[i] ? result.combined : result.conflicted).add(a);
+            }
+        }
+        return result;
+    }
+
+    /** Do ACTION, which is TAKE or COMBINE, to the working file A, whose
+     *  blob ids are OURS, BASE and THEIRS in the current commit, at the
+     *  split point and in the given commit.  Returns false iff A is left
+     *  with conflicts. */
+    private static boolean apply(String a, int action, String ours,
+                                 String base, String theirs) {
+        File f = new File(a);
+        if (action == TAKE) {
+            ObjectStore.checkout(theirs, f);
+            return true;
+        }
+        try {
+            File parent = f.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(f))) {
+                byte[] b = null, o = null, t = null;
+                if (ours != null && theirs != null) {
+                    b = read(base);
+                    o = b == null ? null : read(ours);
+                    t = o == null ? null : read(theirs);
+                }
+                if (t == null) {
+                    conflict(out, ours, theirs);
+                    return false;
+                }
+                return merge(b, o, t, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write to OUT the line-by-line merge of OURS and THEIRS, two
+     *  changed versions of BASE.  Returns true iff no region was changed
+     *  differently by both, so that no conflicts were marked. */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        Diff.Lines b = lines(base), o = lines(ours), t = lines(theirs);
+        HashMap<ByteBuffer, Integer> codes = new HashMap<>();
+        int[] cb = b.codes(codes), co = o.codes(codes), ct = t.codes(codes);
+        List<Diff.Hunk> hunksO = Diff.diff(cb, co), hunksT = Diff.diff(cb, ct);
+        boolean clean = true;
+        int i = 0, j = 0, pos = 0, deltaO = 0, deltaT = 0;
+        while (i < hunksO.size() || j < hunksT.size()) {
+            int i0 = i, j0 = j;
+            int lo = Math.min(
+                i < hunksO.size() ? hunksO.get(i).aStart : Integer.MAX_VALUE,
+                j < hunksT.size() ? hunksT.get(j).aStart : Integer.MAX_VALUE);
+            int hi = lo;
+            while (true) {
+                if (i < hunksO.size() && hunksO.get(i).aStart <= hi) {
+                    hi = Math.max(hi, hunksO.get(i).aEnd);
+                    i += 1;
+                } else if (j < hunksT.size() && hunksT.get(j).aStart <= hi) {
+                    hi = Math.max(hi, hunksT.get(j).aEnd);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            int oStart = lo + deltaO, oEnd = hi + deltaO;
+            if (i > i0) {
+                oStart = hunksO.get(i0).bStart - (hunksO.get(i0).aStart - lo);
+                oEnd = hunksO.get(i - 1).bEnd + (hi - hunksO.get(i - 1).aEnd);
+            }
+            int tStart = lo + deltaT, tEnd = hi + deltaT;
+            if (j > j0) {
+                tStart = hunksT.get(j0).bStart - (hunksT.get(j0).aStart - lo);
+                tEnd = hunksT.get(j - 1).bEnd + (hi - hunksT.get(j - 1).aEnd);
+            }
+            b.write(out, pos, lo);
+            if (j == j0) {
+                o.write(out, oStart, oEnd);
+            } else if (i == i0 || same(co, oStart, oEnd, ct, tStart, tEnd)) {
+                t.write(out, tStart, tEnd);
+            } else {
+                clean = false;
+                out.write(OURS_MARKER);
+                o.writeLines(out, oStart, oEnd);
+                out.write(SEPARATOR);
+                t.writeLines(out, tStart, tEnd);
+                out.write(THEIRS_MARKER);
+            }
+            pos = hi;
+            deltaO = oEnd - hi;
+            deltaT = tEnd - hi;
+        }
+        b.write(out, pos, b.size());
+        return clean;
+    }
+
+    /** Write to OUT the whole of blobs OURS and THEIRS, either of which
+     *  may be null for none, as one conflict. */
+    private static void conflict(OutputStream out, String ours,
+                                 String theirs) throws IOException {
+        out.write(OURS_MARKER);
+        copyLines(ours, out);
+        out.write(SEPARATOR);
+        copyLines(theirs, out);
+        out.write(THEIRS_MARKER);
+    }
+
+    /** Copy blob ID, if it is not null, to OUT, ending it with a line
+     *  terminator if it lacks one. */
+    private static void copyLines(String id, OutputStream out)
+        throws IOException {
+        if (id == null) {
+            return;
+        }
+        byte[] buf = new byte[1 << 16];
+        int last = '\n';
+        try (InputStream in = ObjectStore.open(id)) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                if (n > 0) {
+                    out.write(buf, 0, n);
+                    last = buf[n - 1];
+                }
+            }
+        }
+        if (last != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Returns true iff lines A[A0..A1) and B[B0..B1) are the same. */
+    private static boolean same(int[] a, int a0, int a1,
+                                int[] b, int b0, int b1) {
+        return Arrays.equals(a, a0, a1, b, b0, b1);
+    }
+
+    /** Returns the contents of blob ID, or nothing if ID is null, read
+     *  through a buffered stream; or null if they are longer than
+     *  MAX_LINE_MERGE bytes. */
+    private static byte[] read(String id) throws IOException {
+        if (id == null) {
+            return new byte[0];
+        }
+        try (InputStream in = new BufferedInputStream(ObjectStore.open(id))) {
+            byte[] contents = in.readNBytes(MAX_LINE_MERGE + 1);
+            return contents.length > MAX_LINE_MERGE ? null : contents;
+        }
+    }
+
+    private static Diff.Lines lines(byte[] contents) {
+        return new Diff.Lines(ByteBuffer.wrap(contents));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** An index of commit messages for find, kept up to date as commits are
+ *  stored.  .gitlet/messages is a log of every commit's id and message,
+ *  in the order they were stored, and .gitlet/messages.idx is an
+ *  inverted index: a SortedTable mapping the hashes of terms to the
+ *  offsets in the log of the commits whose messages contain them.  The
+ *  terms of a message are the whole message and each distinct word (run
+ *  of letters and digits) in it, lower-cased.
+ *
+ *  Exact and word searches look their terms up in the inverted index
+ *  and check only the messages it points to; substring searches scan
+ *  the log, which is far smaller than the commits themselves.
+ */
+class MessageIndex {
+
+    static final File LOG = new File(".gitlet/messages");
+    static final File TERMS = new File(".gitlet/messages.idx");
+
+    private static final int MAGIC = 0x474c4d53;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_SIZE = 16;
+
+    /** Prefixes that keep the hashes of whole messages and of words
+     *  apart. */
+    private static final char MESSAGE = 'm';
+    private static final char WORD = 'w';
+
+    private static final SortedTable POSTINGS =
+        new SortedTable(TERMS, 8, RECORD_SIZE);
+
+    /** The mapped log. */
+    private static ByteBuffer log;
+
+    /** Add C, which has just been stored, to the index. */
+    static void add(Commit c) {
+        if (!LOG.isFile()) {
+            rebuild();
+            return;
+        }
+        long offset = LOG.length();
+        try (FileOutputStream out = new FileOutputStream(LOG, true)) {
+            out.write(entry(c));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        POSTINGS.append(postings(c.getMessage(), offset));
+    }
+
+    /** Returns the ids of the commits whose message is MESSAGE, oldest
+     *  first. */
+    static List<String> exact(String message) {
+        ArrayList<String> result = new ArrayList<>();
+        for (long offset : lookup(MESSAGE + message)) {
+            if (messageAt(offset).equals(message)) {
+                result.add(idAt(offset));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the commits whose messages contain every word
+     *  of QUERY, ignoring case, oldest first. */
+    static List<String> words(String query) {
+        Set<String> wanted = words(query, new LinkedHashSet<>());
+        if (wanted.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TreeSet<Long> candidates = null;
+        for (String w : wanted) {
+            TreeSet<Long> found = lookup(WORD + w);
+            if (candidates == null) {
+                candidates = found;
+            } else {
+                candidates.retainAll(found);
+            }
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (long offset : candidates) {
+            if (words(messageAt(offset), new TreeSet<>()).containsAll(wanted)) {
+                result.add(idAt(offset));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the commits whose messages contain TEXT, oldest
+     *  first. */
+    static List<String> substring(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        ByteBuffer buf = mappedLog();
+        for (long offset = HEADER_SIZE; offset < buf.capacity();
+             offset += ObjectId.SIZE + 4 + buf.getInt((int) offset
+                                                       + ObjectId.SIZE)) {
+            if (messageAt(offset).contains(text)) {
+                result.add(idAt(offset));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the log offsets of the commits whose messages contain
+     *  TERM, or whose hashes collide with it, in increasing order. */
+    private static TreeSet<Long> lookup(String term) {
+        mappedLog();
+        TreeSet<Long> result = new TreeSet<>();
+        byte[] key = ByteBuffer.allocate(8).putLong(hash(term)).array();
+        for (byte[] rec : POSTINGS.findPrefix(key, 64, Integer.MAX_VALUE)) {
+            result.add(ByteBuffer.wrap(rec).getLong(8));
+        }
+        return result;
+    }
+
+    /** Returns the postings of the terms of MESSAGE, whose log entry is at
+     *  OFFSET. */
+    private static List<byte[]> postings(String message, long offset) {
+        ArrayList<byte[]> result = new ArrayList<>();
+        result.add(posting(MESSAGE + message, offset));
+        for (String w : words(message, new TreeSet<>())) {
+            result.add(posting(WORD + w, offset));
+        }
+        return result;
+    }
+
+    /** Returns the posting of TERM at OFFSET. */
+    private static byte[] posting(String term, long offset) {
+        return ByteBuffer.allocate(RECORD_SIZE).putLong(hash(term))
+            .putLong(offset).array();
+    }
+
+    /** Add the distinct lower-cased words of TEXT to WORDS and return
+     *  WORDS. */
+    private static <S extends Set<String>> S words(String text, S words) {
+        for (String w : text.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                words.add(w);
+            }
+        }
+        return words;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 encoding of S. */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Returns the log entry of C. */
+    private static byte[] entry(Commit c) {
+        byte[] message = c.getMessage().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(ObjectId.SIZE + 4 + message.length)
+            .put(ObjectId.fromHex(c.getSHA1()).toBytes())
+            .putInt(message.length).put(message).array();
+    }
+
+    /** Returns the id in the log entry at OFFSET. */
+    private static String idAt(long offset) {
+        byte[] id = new byte[ObjectId.SIZE];
+        mappedLog().get((int) offset, id);
+        return ObjectId.toHex(id, 0, ObjectId.SIZE);
+    }
+
+    /** Returns the message in the log entry at OFFSET. */
+    private static String messageAt(long offset) {
+        ByteBuffer buf = mappedLog();
+        byte[] message = new byte[buf.getInt((int) offset + ObjectId.SIZE)];
+        buf.get((int) offset + ObjectId.SIZE + 4, message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the log, building the index first if there is none and
+     *  mapping the log afresh if it has changed. */
+    private static ByteBuffer mappedLog() {
+        if (!LOG.isFile()) {
+            rebuild();
+        }
+        if (log == null || log.capacity() != LOG.length()) {
+            log = Utils.mapContents(LOG);
+        }
+        return log;
+    }
+
+    /** Build the log and inverted index from all stored commits, for
+     *  repositories made before they were kept. */
+    private static void rebuild() {
+        ArrayList<byte[]> postings = new ArrayList<>();
+        File tmp = new File(LOG.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                CommitStore.scanHeaders(c -> {
+                    postings.addAll(postings(c.getMessage(), out.size()));
+                    try {
+                        out.write(entry(c));
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                });
+            }
+            POSTINGS.rewrite(postings);
+            Files.move(tmp.toPath(), LOG.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        log = null;
+    }
+}
@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A SHA-1 value held as its 20 raw bytes (in two longs and an int, to
+ *  avoid an array per id) rather than as a 40-character string, together
+ *  with the hashing routines that produce such values.  Digests and file
+ *  buffers are kept per thread and reused, so hashing allocates almost
+ *  nothing.
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Length of an id in bytes. */
+    static final int SIZE = 20;
+
+    /** Files at least this long are hashed through a memory map. */
+    static final long MAP_THRESHOLD = 1 << 23;
+
+    /** Size of the windows in which large files are mapped. */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 16));
+
+    private final long w0, w1;
+    private final int w2;
+
+    private ObjectId(long w0, long w1, int w2) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+    }
+
+    /** Returns the id whose bytes are the SIZE bytes of BYTES starting at
+     *  OFFSET. */
+    static ObjectId fromBytes(byte[] bytes, int offset) {
+        ByteBuffer b = ByteBuffer.wrap(bytes, offset, SIZE);
+        return new ObjectId(b.getLong(), b.getLong(), b.getInt());
+    }
+
+    /** Returns the id denoted by the 40 hexadecimal digits HEX. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != 2 * SIZE) {
+            throw new IllegalArgumentException("not a SHA-1 value: " + hex);
+        }
+        byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < SIZE; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not a SHA-1 value: " + hex);
+            }
+            bytes[i] = (byte) (hi << 4 | lo);
+        }
+        return fromBytes(bytes, 0);
+    }
+
+    /** Returns the thread's SHA-1 digest, reset and ready for use. */
+    static MessageDigest digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns the id produced by completing the digest MD. */
+    static ObjectId of(MessageDigest md) {
+        return fromBytes(md.digest(), 0);
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE.  Small files are
+     *  streamed through a reusable direct buffer; large ones are mapped.
+     *  Throws IllegalArgumentException in case of problems. */
+    static ObjectId hash(File file) {
+        long begin = Stats.begin();
+        MessageDigest md = digest();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            long size = ch.size();
+            Stats.read(size);
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                                     Math.min(MAP_WINDOW, size - pos)));
+                }
+            } else {
+                ByteBuffer buf = BUFFER.get();
+                buf.clear();
+                while (ch.read(buf) > 0) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.HASH, begin);
+        }
+        return of(md);
+    }
+
+    /** Returns the hexadecimal form of the LEN bytes of BYTES starting at
+     *  OFFSET. */
+    static String toHex(byte[] bytes, int offset, int len) {
+        char[] result = new char[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = HEX[b >>> 4];
+            result[2 * i + 1] = HEX[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns my SIZE bytes. */
+    byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE).putLong(w0).putLong(w1).putInt(w2)
+            .array();
+    }
+
+    @Override
+    public String toString() {
+        return toHex(toBytes(), 0, SIZE);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w0 >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(w0, other.w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(w1, other.w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w2, other.w2);
+        }
+        return c;
+    }
+}
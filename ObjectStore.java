@@ -0,0 +1,431 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** The store of file contents (blobs), kept in .gitlet/blobs with each
+ *  blob named by its SHA-1 id.  Files are written into the store once,
+ *  when they are added; staging and committing only pass ids around.
+ *  All transfers are streamed, so no file ever has to fit in memory.
+ *
+ *  Objects are compressed with the codec named by the gitlet.codec
+ *  property (see Codec), or stored as they are when that would not
+ *  make them smaller.  gc moves objects into packs (see Pack), which are
+ *  searched for any object not found loose.
+ *
+ *  Files of CHUNK_THRESHOLD bytes or more are split into chunks by
+ *  Chunker, and each chunk is stored as an object of its own, once, under
+ *  the SHA-1 of its contents.  The file's blob is then a chunk list:
+ *  the ids and lengths of its chunks, in order.  A small edit to a large
+ *  file adds only the chunks it changed, and storing the file again
+ *  writes only those.  A chunk list reads as the file's contents.
+ */
+class ObjectStore {
+
+    static final File BLOBS = new File(".gitlet/blobs");
+
+    /** Start of the header of every object written by this version of
+     *  gitlet, which is followed by the id of the object's codec.  Objects
+     *  without it were written, uncompressed, by older versions. */
+    private static final byte[] MAGIC = { 'G', 'L', 'O', 0 };
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    /** What follows MAGIC, in place of a codec id, in a chunk list. */
+    private static final byte CHUNKED = (byte) 0x80;
+    /** Size of each entry of a chunk list: an id and a length. */
+    private static final int CHUNK_ENTRY_SIZE = ObjectId.SIZE + 4;
+
+    /** Size of the smallest file stored as chunks. */
+    static final long CHUNK_THRESHOLD = 4L * Chunker.AVG_SIZE;
+
+    /** Longest chain of deltas that repack will make. */
+    private static final int MAX_DEPTH = 10;
+    /** Size of the largest object that repack will store as a delta. */
+    private static final int DELTA_LIMIT = 64 << 20;
+
+    /** Staging directory in which older versions of gitlet kept copies of
+     *  staged files. */
+    static final File LEGACY_STAGING = new File(".gitlet/stagingarea");
+
+    /** Returns true iff the blob ID is stored. */
+    static boolean contains(String id) {
+        return new File(BLOBS, id).isFile() || Pack.contains(id);
+    }
+
+    /** Store the contents of SRC as blob ID, unless that blob is already
+     *  stored.  The blob appears atomically, so a crash never leaves a
+     *  partial blob under its final name. */
+    static void store(File src, String id) {
+        File dest = new File(BLOBS, id);
+        if (contains(id)) {
+            return;
+        }
+        if (src.length() >= CHUNK_THRESHOLD) {
+            storeChunks(src, id);
+            return;
+        }
+        long begin = Stats.begin();
+        try {
+            File tmp = File.createTempFile(id, ".tmp", BLOBS);
+            Codec codec = Codec.configured();
+            write(src, tmp, codec);
+            if (codec != Codec.RAW
+                && tmp.length() >= src.length() + HEADER_SIZE) {
+                write(src, tmp, Codec.RAW);
+            }
+            Stats.read(src.length());
+            Stats.wrote(tmp.length());
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.STORE_BLOB, begin);
+        }
+    }
+
+    /** Store the contents of SRC as blob ID in chunks, storing those of
+     *  its chunks that are not already stored. */
+    private static void storeChunks(File src, String id) {
+        long begin = Stats.begin();
+        try {
+            ByteArrayOutputStream list = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(list);
+            int count = 0;
+            try (InputStream in = Files.newInputStream(src.toPath())) {
+                Chunker chunker = new Chunker(in);
+                for (byte[] chunk = chunker.next(); chunk != null;
+                     chunk = chunker.next()) {
+                    String chunkID = Utils.sha1((Object) chunk);
+                    store(chunk, chunkID);
+                    out.write(ObjectId.fromHex(chunkID).toBytes());
+                    out.writeInt(chunk.length);
+                    count += 1;
+                }
+            }
+            Stats.read(src.length());
+            File tmp = File.createTempFile(id, ".tmp", BLOBS);
+            try (DataOutputStream f = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                f.write(MAGIC);
+                f.write(CHUNKED);
+                f.writeInt(count);
+                list.writeTo(f);
+            }
+            Stats.wrote(tmp.length());
+            Files.move(tmp.toPath(), new File(BLOBS, id).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.STORE_BLOB, begin);
+        }
+    }
+
+    /** Store CONTENTS as object ID, unless it is already stored. */
+    static void store(byte[] contents, String id) {
+        File dest = new File(BLOBS, id);
+        if (contains(id)) {
+            return;
+        }
+        long begin = Stats.begin();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Codec codec = Codec.configured();
+            try (OutputStream out = encoder(bytes, codec)) {
+                out.write(contents);
+            }
+            if (codec != Codec.RAW
+                && bytes.size() >= contents.length + HEADER_SIZE) {
+                bytes.reset();
+                try (OutputStream out = encoder(bytes, Codec.RAW)) {
+                    out.write(contents);
+                }
+            }
+            File tmp = File.createTempFile(id, ".tmp", BLOBS);
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.STORE_BLOB, begin);
+        }
+    }
+
+    /** Returns the contents of object ID, which should be small. */
+    static byte[] readBytes(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Move a copy of blob ID staged by an older version of gitlet, if
+     *  there is one, into the store. */
+    static void promote(String id) {
+        File staged = new File(LEGACY_STAGING, id);
+        if (!staged.isFile()) {
+            return;
+        }
+        try {
+            Files.move(staged.toPath(), new File(BLOBS, id).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of blob ID, decompressed as it is
+     *  read. */
+    static InputStream open(String id) throws IOException {
+        File loose = new File(BLOBS, id);
+        if (!loose.isFile()) {
+            InputStream packed = Pack.open(id);
+            if (packed == null) {
+                throw new FileNotFoundException("no object " + id);
+            }
+            return packed;
+        }
+        Stats.read(loose.length());
+        InputStream in = new BufferedInputStream(
+            Files.newInputStream(loose.toPath()), 1 << 16);
+        in.mark(HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int n = in.readNBytes(header, 0, HEADER_SIZE);
+        if (n == HEADER_SIZE && Arrays.equals(header, 0, MAGIC.length,
+                                              MAGIC, 0, MAGIC.length)) {
+            if (header[MAGIC.length] == CHUNKED) {
+                try (InputStream list = in) {
+                    return joinChunks(ByteBuffer.wrap(list.readAllBytes()));
+                }
+            }
+            return Codec.forId(header[MAGIC.length]).decode(in);
+        }
+        in.reset();
+        return in;
+    }
+
+    /** Returns the chunk list that is blob ID (a count and then the
+     *  entries), or null if ID is stored whole. */
+    static byte[] chunkList(String id) throws IOException {
+        File loose = new File(BLOBS, id);
+        if (!loose.isFile()) {
+            return Pack.chunkList(id);
+        }
+        try (InputStream in = Files.newInputStream(loose.toPath())) {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (header.length < HEADER_SIZE
+                || !Arrays.equals(header, 0, MAGIC.length,
+                                  MAGIC, 0, MAGIC.length)
+                || header[MAGIC.length] != CHUNKED) {
+                return null;
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    /** Returns a stream of the contents of the chunks that LIST, a chunk
+     *  list, names, each opened as it is reached. */
+    static InputStream joinChunks(ByteBuffer list) {
+        int count = list.getInt();
+        return new InputStream() {
+            private int next;
+            private InputStream chunk = InputStream.nullInputStream();
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int n;
+                while ((n = chunk.read(b, off, len)) < 0 && next < count) {
+                    chunk.close();
+                    byte[] id = new byte[ObjectId.SIZE];
+                    list.position(4 + next * CHUNK_ENTRY_SIZE);
+                    list.get(id);
+                    next += 1;
+                    chunk = open(ObjectId.toHex(id, 0, ObjectId.SIZE));
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                chunk.close();
+            }
+        };
+    }
+
+    /** Returns the contents of blob ID: the stored file itself, mapped
+     *  into memory, when the blob is loose and uncompressed, and
+     *  otherwise its contents decompressed into the heap. */
+    static ByteBuffer map(String id) {
+        File loose = new File(BLOBS, id);
+        if (loose.isFile()) {
+            ByteBuffer buf = Utils.mapContents(loose);
+            boolean headed = buf.capacity() >= HEADER_SIZE;
+            for (int i = 0; headed && i < MAGIC.length; i += 1) {
+                headed = buf.get(i) == MAGIC[i];
+            }
+            if (!headed) {
+                return buf;
+            } else if (buf.get(MAGIC.length) == Codec.RAW.id()) {
+                return buf.slice(HEADER_SIZE, buf.capacity() - HEADER_SIZE);
+            }
+        }
+        return ByteBuffer.wrap(readBytes(id));
+    }
+
+    /** Overwrite (or create) DEST with the contents of blob ID, and note
+     *  its new contents in the stat index. */
+    static void checkout(String id, File dest) {
+        long begin = Stats.begin();
+        try {
+            File dir = dest.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory()) {
+                Files.createDirectories(dir.toPath());
+            }
+            try (InputStream in = open(id)) {
+                Stats.wrote(Files.copy(in, dest.toPath(),
+                                       StandardCopyOption.REPLACE_EXISTING));
+            }
+            StatIndex.record(dest, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.CHECKOUT_BLOB, begin);
+        }
+    }
+
+    /** Move every object, loose or packed, into one new pack and delete
+     *  the loose objects and old packs.  Each of HISTORIES lists the
+     *  versions of one file, oldest first; a version is stored as a delta
+     *  from the one before it when that is less than half its size and
+     *  leaves no chain of deltas longer than MAX_DEPTH.  Chunk lists are
+     *  packed as they are, and are never bases, which would mean reading
+     *  whole large files; their chunks are packed like any other object.
+     *  Returns the number of objects packed and the number of those that
+     *  are deltas. */
+    static int[] repack(Collection<? extends List<String>> histories) {
+        LinkedHashSet<String> ids = new LinkedHashSet<>();
+        HashMap<String, String> bases = new HashMap<>();
+        for (List<String> versions : histories) {
+            String prev = null;
+            for (String id : versions) {
+                if (ids.add(id) && prev != null && !prev.equals(id)) {
+                    bases.put(id, prev);
+                }
+                prev = id;
+            }
+        }
+        List<String> oldPacks = Pack.names();
+        ids.addAll(Pack.ids());
+        List<String> loose = Utils.plainFilenamesIn(BLOBS);
+        for (String name : loose) {
+            if (!name.endsWith(".tmp")) {
+                ids.add(name);
+            }
+        }
+
+        HashMap<String, Integer> depths = new HashMap<>();
+        int deltas = 0;
+        try {
+            Pack.Writer pack = new Pack.Writer(Codec.configured());
+            String lastID = null;
+            byte[] last = null;
+            for (String id : ids) {
+                if (!contains(id)) {
+                    continue;
+                }
+                byte[] list = chunkList(id);
+                if (list != null) {
+                    pack.addChunkList(id, list);
+                    depths.put(id, MAX_DEPTH);
+                    continue;
+                }
+                String base = bases.get(id);
+                Integer baseDepth = base == null ? null : depths.get(base);
+                if (baseDepth != null && baseDepth < MAX_DEPTH) {
+                    byte[] contents;
+                    try (InputStream in = open(id)) {
+                        contents = in.readNBytes(DELTA_LIMIT + 1);
+                    }
+                    if (contents.length <= DELTA_LIMIT) {
+                        byte[] from = base.equals(lastID) ? last
+                            : readBytes(base);
+                        byte[] delta = Delta.create(from, contents);
+                        lastID = id;
+                        last = contents;
+                        if (delta.length < contents.length / 2) {
+                            pack.addDelta(id, base, delta);
+                            depths.put(id, baseDepth + 1);
+                            deltas += 1;
+                            continue;
+                        }
+                    }
+                }
+                try (InputStream in = open(id)) {
+                    pack.addFull(id, in);
+                }
+                depths.put(id, 0);
+            }
+            String name = pack.install();
+            for (String old : oldPacks) {
+                if (!old.equals(name)) {
+                    Pack.delete(old);
+                }
+            }
+            for (String id : depths.keySet()) {
+                new File(BLOBS, id).delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new int[] { depths.size(), deltas };
+    }
+
+    /** Write the contents of SRC, encoded by CODEC, to DEST. */
+    private static void write(File src, File dest, Codec codec)
+        throws IOException {
+        try (OutputStream out = encoder(new FileOutputStream(dest), codec)) {
+            Files.copy(src.toPath(), out);
+        }
+    }
+
+    /** Returns a stream that writes a header naming CODEC to OUT, followed
+     *  by the encoding by CODEC of what is written to it. */
+    private static OutputStream encoder(OutputStream out, Codec codec)
+        throws IOException {
+        out = new BufferedOutputStream(out, 1 << 16);
+        out.write(MAGIC);
+        out.write(codec.id());
+        return codec.encode(out);
+    }
+}
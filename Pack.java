@@ -0,0 +1,318 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A pack of objects, written by gc, in .gitlet/packs.  A pack holds
+ *  many objects in one file, some of them stored as deltas (see Delta)
+ *  from other objects, with an index for random access.
+ *
+ *  Each pack is a pair of files named after a hash of the ids it holds:
+ *  pack-ID.pack holds the objects and pack-ID.idx is a SortedTable
+ *  mapping each id to the offset and length of its entry.  An entry is
+ *  a kind (FULL or DELTA), the id of its base if it is a delta, the id
+ *  of the codec its contents (or delta) are compressed with, and the
+ *  compressed contents; or else the kind CHUNKED and a chunk list, as
+ *  ObjectStore describes, whose chunks are objects of their own.  A pack
+ *  is only visible once its index is in place, and is never changed
+ *  after that.  Entries are mapped one at a time, so packs may be larger
+ *  than a buffer can address.
+ *
+ *  The packs present are listed once and listed again only when an
+ *  object is in none of them, as happens after another process packs
+ *  it.
+ */
+class Pack {
+
+    static final File DIR = new File(".gitlet/packs");
+
+    private static final int MAGIC = 0x474c504b;
+    private static final int HEADER_SIZE = 4;
+    private static final int ENTRY_SIZE = ObjectId.SIZE + 16;
+
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+    private static final byte CHUNKED = 2;
+
+    /** The packs present when they were last listed, or null if they
+     *  must be listed again. */
+    private static List<Pack> packs;
+
+    /** Index of my entries. */
+    private final SortedTable index;
+    /** My objects. */
+    private final File data;
+
+    /** The pack whose index is named NAME in DIR. */
+    private Pack(String name) {
+        index = new SortedTable(new File(DIR, name), ObjectId.SIZE,
+                                ENTRY_SIZE);
+        data = new File(DIR, name.replaceFirst("\\.idx$", ".pack"));
+    }
+
+    /** Returns true iff object ID is in a pack. */
+    static boolean contains(String id) {
+        return find(id) != null;
+    }
+
+    /** Returns a stream of the contents of object ID, or null if it is
+     *  in no pack. */
+    static InputStream open(String id) throws IOException {
+        Pack p = find(id);
+        return p == null ? null : p.read(p.entry(id));
+    }
+
+    /** Returns the chunk list that is packed object ID, or null if ID
+     *  is not packed as one. */
+    static byte[] chunkList(String id) {
+        Pack p = find(id);
+        if (p == null) {
+            return null;
+        }
+        ByteBuffer e = p.entry(id);
+        if (e.get() != CHUNKED) {
+            return null;
+        }
+        byte[] list = new byte[e.remaining()];
+        e.get(list);
+        return list;
+    }
+
+    /** Returns the pack that holds object ID, or null if none does. */
+    private static Pack find(String id) {
+        byte[] key = ObjectId.fromHex(id).toBytes();
+        boolean listed = packs == null;
+        if (listed) {
+            list();
+        }
+        while (true) {
+            for (Pack p : packs) {
+                if (p.index.find(key) != null) {
+                    return p;
+                }
+            }
+            if (listed) {
+                return null;
+            }
+            list();
+            listed = true;
+        }
+    }
+
+    /** Returns the ids of all packed objects. */
+    static List<String> ids() {
+        ArrayList<String> result = new ArrayList<>();
+        list();
+        for (Pack p : packs) {
+            for (int i = 0, n = p.index.size(); i < n; i += 1) {
+                result.add(ObjectId.toHex(p.index.record(i), 0,
+                                          ObjectId.SIZE));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of the indexes of the packs present. */
+    static List<String> names() {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> all = Utils.plainFilenamesIn(DIR);
+        if (all != null) {
+            for (String name : all) {
+                if (name.endsWith(".idx")) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Delete the pack whose index is named NAME, index first. */
+    static void delete(String name) {
+        new File(DIR, name).delete();
+        new File(DIR, name.replaceFirst("\\.idx$", ".pack")).delete();
+        packs = null;
+    }
+
+    /** List the packs present. */
+    private static void list() {
+        packs = new ArrayList<>();
+        for (String name : names()) {
+            packs.add(new Pack(name));
+        }
+    }
+
+    /** Returns my entry for object ID, which I hold. */
+    private ByteBuffer entry(String id) {
+        ByteBuffer record =
+            ByteBuffer.wrap(index.find(ObjectId.fromHex(id).toBytes()));
+        return Utils.mapContents(data, record.getLong(ObjectId.SIZE),
+                                 record.getLong(ObjectId.SIZE + 8));
+    }
+
+    /** Returns a stream of the contents of ENTRY. */
+    private InputStream read(ByteBuffer entry) throws IOException {
+        byte kind = entry.get();
+        String base = null;
+        if (kind == CHUNKED) {
+            return ObjectStore.joinChunks(entry.slice());
+        } else if (kind == DELTA) {
+            byte[] id = new byte[ObjectId.SIZE];
+            entry.get(id);
+            base = ObjectId.toHex(id, 0, ObjectId.SIZE);
+        } else if (kind != FULL) {
+            throw new IOException("corrupt pack " + data);
+        }
+        InputStream contents = Codec.forId(entry.get()).decode(stream(entry));
+        if (base == null) {
+            return contents;
+        }
+        byte[] delta;
+        try (InputStream in = contents) {
+            delta = in.readAllBytes();
+        }
+        return new ByteArrayInputStream(
+            Delta.apply(ObjectStore.readBytes(base), delta));
+    }
+
+    /** Returns a stream of the remaining bytes of BUF. */
+    private static InputStream stream(ByteBuffer buf) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buf.hasRemaining() ? buf.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buf.hasRemaining()) {
+                    return -1;
+                }
+                len = Math.min(len, buf.remaining());
+                buf.get(b, off, len);
+                return len;
+            }
+        };
+    }
+
+    /** Writes a new pack. */
+    static class Writer {
+        private final File tmp;
+        private final FileOutputStream file;
+        private final OutputStream out;
+        private final FileChannel channel;
+        private final Codec codec;
+        private final ArrayList<byte[]> entries = new ArrayList<>();
+        private final ArrayList<String> ids = new ArrayList<>();
+
+        /** A writer of a pack whose contents are compressed by CODEC. */
+        Writer(Codec codec) throws IOException {
+            DIR.mkdirs();
+            this.codec = codec;
+            tmp = File.createTempFile("pack", ".tmp", DIR);
+            file = new FileOutputStream(tmp);
+            channel = file.getChannel();
+            out = new BufferedOutputStream(file, 1 << 16);
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).array());
+        }
+
+        /** Add object ID, whose contents are read from IN. */
+        void addFull(String id, InputStream in) throws IOException {
+            long offset = start(FULL);
+            out.write(codec.id());
+            try (OutputStream enc = codec.encode(unclosed(out))) {
+                in.transferTo(enc);
+            }
+            finish(id, offset);
+        }
+
+        /** Add object ID as DELTA from object BASE. */
+        void addDelta(String id, String base, byte[] delta)
+            throws IOException {
+            long offset = start(DELTA);
+            out.write(ObjectId.fromHex(base).toBytes());
+            out.write(codec.id());
+            try (OutputStream enc = codec.encode(unclosed(out))) {
+                enc.write(delta);
+            }
+            finish(id, offset);
+        }
+
+        /** Add object ID as the chunk list LIST. */
+        void addChunkList(String id, byte[] list) throws IOException {
+            long offset = start(CHUNKED);
+            out.write(list);
+            finish(id, offset);
+        }
+
+        /** Finish the pack and put it in place, returning the name of its
+         *  index, or null if it is empty. */
+        String install() throws IOException {
+            out.close();
+            if (ids.isEmpty()) {
+                tmp.delete();
+                return null;
+            }
+            ids.sort(null);
+            String name = "pack-" + Utils.sha1(String.join("", ids));
+            Files.move(tmp.toPath(), new File(DIR, name + ".pack").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            new SortedTable(new File(DIR, name + ".idx"), ObjectId.SIZE,
+                            ENTRY_SIZE).rewrite(entries);
+            packs = null;
+            return name + ".idx";
+        }
+
+        /** Start an entry of kind KIND, returning its offset. */
+        private long start(byte kind) throws IOException {
+            out.flush();
+            long offset = channel.position();
+            out.write(kind);
+            return offset;
+        }
+
+        /** Record that the entry for ID, which started at OFFSET, is
+         *  complete. */
+        private void finish(String id, long offset) throws IOException {
+            out.flush();
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.put(ObjectId.fromHex(id).toBytes());
+            entry.putLong(offset);
+            entry.putLong(channel.position() - offset);
+            entries.add(entry.array());
+            ids.add(id);
+        }
+
+        /** Returns a stream writing to OUT that leaves OUT open when it
+         *  is closed. */
+        private static OutputStream unclosed(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len)
+                    throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/** A file of fixed-width binary records ordered by their leading KEYWIDTH
+ *  bytes.  The file holds a sorted run followed by a short unsorted tail
+ *  of recent appends; once the tail passes MAX_TAIL records it is merged
+ *  into the run.  Lookups binary-search the memory-mapped run and scan
+ *  the tail, so they cost O(log n + MAX_TAIL) without reading the file
+ *  into the heap.
+ */
+class SortedTable {
+
+    /** Number of unsorted records allowed before a merge. */
+    static final int MAX_TAIL = 256;
+
+    private static final int MAGIC = 0x474c4958;
+    private static final int HEADER_SIZE = 12;
+
+    /** The file holding the table. */
+    private final File file;
+    /** Width of keys and whole records, in bytes. */
+    private final int keyWidth, recordWidth;
+    /** The mapped file, or null if it must be remapped. */
+    private ByteBuffer map;
+    /** Number of records in the sorted run and in the tail. */
+    private int sorted, tail;
+
+    /** A table kept in FILE with records of RECORDWIDTH bytes ordered by
+     *  their first KEYWIDTH bytes. */
+    SortedTable(File file, int keyWidth, int recordWidth) {
+        this.file = file;
+        this.keyWidth = keyWidth;
+        this.recordWidth = recordWidth;
+    }
+
+    /** Returns the number of records in the table. */
+    int size() {
+        remap();
+        return sorted + tail;
+    }
+
+    /** Returns the first record whose key equals KEY, or null. */
+    byte[] find(byte[] key) {
+        List<byte[]> found = findPrefix(key, key.length * 8, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /** Returns up to LIMIT records whose keys start with the first BITS
+     *  bits of PREFIX, those from the sorted run first and in key
+     *  order. */
+    List<byte[]> findPrefix(byte[] prefix, int bits, int limit) {
+        remap();
+        ArrayList<byte[]> result = new ArrayList<>();
+        int lo = 0, hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(mid, prefix, bits) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < sorted && result.size() < limit
+                 && comparePrefix(i, prefix, bits) == 0; i += 1) {
+            result.add(record(i));
+        }
+        for (int i = sorted; i < sorted + tail && result.size() < limit;
+             i += 1) {
+            if (comparePrefix(i, prefix, bits) == 0) {
+                result.add(record(i));
+            }
+        }
+        return result;
+    }
+
+    /** Returns record number I, counting the sorted run first. */
+    byte[] record(int i) {
+        byte[] rec = new byte[recordWidth];
+        ByteBuffer buf = map.duplicate();
+        buf.position(HEADER_SIZE + i * recordWidth);
+        buf.get(rec);
+        return rec;
+    }
+
+    /** Append the records RECS (each RECORDWIDTH bytes long) to the
+     *  table, merging the tail into the sorted run if it grows too
+     *  long. */
+    void append(List<byte[]> recs) {
+        remap();
+        if (tail + recs.size() > MAX_TAIL) {
+            ArrayList<byte[]> all = new ArrayList<>(size() + recs.size());
+            for (int i = 0; i < sorted + tail; i += 1) {
+                all.add(record(i));
+            }
+            all.addAll(recs);
+            rewrite(all);
+            return;
+        }
+        try {
+            if (sorted + tail == 0 && !file.isFile()) {
+                rewrite(new ArrayList<>());
+            }
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                for (byte[] rec : recs) {
+                    out.write(rec);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map = null;
+    }
+
+    /** Replace the contents of the table with the records in RECS, which
+     *  are sorted first. */
+    void rewrite(List<byte[]> recs) {
+        Comparator<byte[]> byKey = (a, b) -> Arrays.compareUnsigned(
+            a, 0, keyWidth, b, 0, keyWidth);
+        recs.sort(byKey);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(recordWidth);
+                out.writeInt(recs.size());
+                for (byte[] rec : recs) {
+                    out.write(rec);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map = null;
+    }
+
+    /** Make sure MAP reflects the current contents of the file, which
+     *  another process may have changed since it was mapped. */
+    private void remap() {
+        if (map != null && file.length() == map.capacity()) {
+            return;
+        }
+        map = Utils.mapContents(file);
+        if (map.capacity() < HEADER_SIZE) {
+            sorted = tail = 0;
+            return;
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != recordWidth) {
+            throw new IllegalArgumentException("corrupt index " + file);
+        }
+        sorted = map.getInt(8);
+        tail = (map.capacity() - HEADER_SIZE) / recordWidth - sorted;
+    }
+
+    /** Compare the key of record I with the first BITS bits of
+     *  PREFIX. */
+    private int comparePrefix(int i, byte[] prefix, int bits) {
+        int base = HEADER_SIZE + i * recordWidth;
+        int k;
+        for (k = 0; 8 * (k + 1) <= bits; k += 1) {
+            int c = Integer.compare(map.get(base + k) & 0xff,
+                                    prefix[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        if (bits % 8 != 0) {
+            int mask = (0xff << (8 - bits % 8)) & 0xff;
+            return Integer.compare(map.get(base + k) & mask,
+                                   prefix[k] & mask);
+        }
+        return 0;
+    }
+}
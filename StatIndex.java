@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A cache, kept in .gitlet/index, of the size, modification time, inode
+ *  and blob id of working files, in the manner of git's index.  Asking it
+ *  for the id of a file costs a stat; the file is only read and hashed
+ *  when its stat data no longer match the cached entry.
+ *
+ *  A file modified within the same clock tick as the index was last
+ *  written could change again without its stat data changing, so such
+ *  "racily clean" entries are always rehashed.
+ */
+class StatIndex {
+
+    static final File INDEX = new File(".gitlet/index");
+
+    private static final int MAGIC = 0x474c5349;
+
+    /** One cached file. */
+    private static class Entry {
+        long size, mtime, inode;
+        ObjectId id;
+    }
+
+    /** Cached entries by working-directory path. */
+    private static HashMap<String, Entry> entries;
+    /** Modification time of the index file when it was loaded or
+     *  written, in milliseconds. */
+    private static long writtenAt;
+    /** True iff entries has changed since it was loaded or written. */
+    private static boolean dirty;
+    /** False once the file system has been found not to report inode
+     *  numbers. */
+    private static boolean haveInodes = true;
+
+    /** Returns the SHA-1 id of the contents of working file F, hashing F
+     *  only if its stat data have changed since it was last hashed.  May
+     *  be called from several threads at once; the hashing itself is not
+     *  done under the lock. */
+    static String idOf(File f) {
+        String path = f.getPath();
+        Entry now = stat(f.toPath());
+        if (now == null) {
+            throw new IllegalArgumentException("File does not exist: " + path);
+        }
+        synchronized (StatIndex.class) {
+            Entry cached = entries().get(path);
+            if (cached != null && cached.size == now.size
+                && cached.mtime == now.mtime && cached.inode == now.inode
+                && now.mtime < writtenAt) {
+                return cached.id.toString();
+            }
+        }
+        now.id = ObjectId.hash(f);
+        synchronized (StatIndex.class) {
+            entries().put(path, now);
+            dirty = true;
+        }
+        return now.id.toString();
+    }
+
+    /** Record that working file F was just written with the contents of
+     *  blob ID. */
+    static synchronized void record(File f, String id) {
+        Entry now = stat(f.toPath());
+        if (now != null) {
+            now.id = ObjectId.fromHex(id);
+            entries().put(f.getPath(), now);
+            dirty = true;
+        }
+    }
+
+    /** Forget working file F, which has been deleted. */
+    static synchronized void forget(File f) {
+        if (entries().remove(f.getPath()) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Write the index back if it has changed. */
+    static synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(INDEX.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Utils.writeString(out, e.getKey());
+                    Entry entry = e.getValue();
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.mtime);
+                    out.writeLong(entry.inode);
+                    out.write(entry.id.toBytes());
+                }
+            }
+            Stats.wrote(tmp.length());
+            Files.move(tmp.toPath(), INDEX.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            writtenAt = INDEX.lastModified();
+            dirty = false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the cached entries, reading the index if they have not
+     *  been read yet or the file has been rewritten by another
+     *  process. */
+    private static HashMap<String, Entry> entries() {
+        if (entries != null && (dirty || INDEX.lastModified() == writtenAt)) {
+            return entries;
+        }
+        entries = new HashMap<>();
+        dirty = false;
+        writtenAt = INDEX.lastModified();
+        ByteBuffer buf = Utils.mapContents(INDEX);
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+            return entries;
+        }
+        byte[] id = new byte[ObjectId.SIZE];
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            String path = Utils.readString(buf);
+            Entry e = new Entry();
+            e.size = buf.getLong();
+            e.mtime = buf.getLong();
+            e.inode = buf.getLong();
+            buf.get(id);
+            e.id = ObjectId.fromBytes(id, 0);
+            entries.put(path, e);
+        }
+        return entries;
+    }
+
+    /** Returns the stat data of P, or null if it is not a plain file. */
+    private static Entry stat(Path p) {
+        try {
+            Map<String, Object> attrs;
+            Entry e = new Entry();
+            if (haveInodes) {
+                try {
+                    attrs = Files.readAttributes(p,
+                        "unix:size,lastModifiedTime,ino,isRegularFile");
+                    e.inode = (Long) attrs.get("ino");
+                } catch (UnsupportedOperationException excp) {
+                    haveInodes = false;
+                    return stat(p);
+                }
+            } else {
+                attrs = Files.readAttributes(p,
+                    "size,lastModifiedTime,isRegularFile");
+            }
+            if (!(Boolean) attrs.get("isRegularFile")) {
+                return null;
+            }
+            e.size = (Long) attrs.get("size");
+            e.mtime = ((FileTime) attrs.get("lastModifiedTime")).toMillis();
+            return e;
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
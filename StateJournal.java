@@ -0,0 +1,447 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/** Persistence for {@link GitletInfo}.  The state lives in two files:
+ *  .gitlet/state, a compact binary checkpoint of the whole state, and
+ *  .gitlet/journal, an append-only log of the mutations made since that
+ *  checkpoint.  Saving appends only the differences from the last loaded
+ *  or saved state, so staging one file costs a few dozen bytes rather
+ *  than a rewrite of everything.  Once the journal grows past
+ *  CHECKPOINT_BYTES it is folded into a new checkpoint.
+ *
+ *  Both files start with the same generation number; a journal whose
+ *  generation does not match the checkpoint's is stale (the checkpoint
+ *  was written but the journal not yet truncated) and is ignored.
+ */
+class StateJournal {
+
+    static final File STATE = new File(".gitlet/state");
+    static final File JOURNAL = new File(".gitlet/journal");
+
+    /** Journal size past which the next save writes a checkpoint. */
+    static final int CHECKPOINT_BYTES = 64 * 1024;
+
+    private static final int STATE_MAGIC = 0x474c5354;
+    private static final int JOURNAL_MAGIC = 0x474c4a4e;
+    private static final int HEADER_SIZE = 12;
+
+    /* Journal record types. */
+    private static final byte SET_HEAD = 1;
+    private static final byte SET_CURR_BRANCH = 2;
+    private static final byte PUT_BRANCH = 3;
+    private static final byte DEL_BRANCH = 4;
+    private static final byte STAGE = 5;
+    private static final byte UNSTAGE = 6;
+    private static final byte ADD_UNTRACK = 7;
+    private static final byte DEL_UNTRACK = 8;
+    private static final byte ADD_REMOVED = 9;
+    private static final byte DEL_REMOVED = 10;
+    private static final byte PUT_SPLITPOINT = 11;
+    private static final byte DEL_SPLITPOINT = 12;
+
+    /** The state as it currently is on disk, or null if it has not been
+     *  loaded or saved by this process. */
+    private static GitletInfo persisted;
+
+    /** Generation of the current checkpoint. */
+    private static long generation;
+
+    /** Size of the journal file, including its header. */
+    private static long journalSize;
+
+    /** Identity, size and modification time of the checkpoint and
+     *  journal as of the last load or save, which tell whether another
+     *  process has changed them since. */
+    private static String fingerprint;
+
+    /** True while saves are held in memory (see defer). */
+    private static boolean deferring;
+
+    /** The state last saved while deferring, if it has not been written
+     *  yet. */
+    private static GitletInfo deferred;
+
+    /** Hold the states passed to save in memory, to be written by the
+     *  next flush, iff ON.  While deferring, load returns the last state
+     *  saved. */
+    static void defer(boolean on) {
+        deferring = on;
+    }
+
+    /** Returns true iff saves are being deferred. */
+    static boolean deferring() {
+        return deferring;
+    }
+
+    /** Write the state last saved while deferring, if it has not been
+     *  written yet. */
+    static void flush() {
+        GitletInfo info = deferred;
+        if (info != null) {
+            deferred = null;
+            boolean on = deferring;
+            deferring = false;
+            try {
+                save(info);
+            } finally {
+                deferring = on;
+            }
+        }
+    }
+
+    /** Read the checkpoint and replay the journal on top of it.  If
+     *  neither file has changed since this process last loaded or saved
+     *  the state, returns a copy of that state without reading them.  A
+     *  repository made by an older gitlet has no checkpoint, only the
+     *  LegacyState, from which the first checkpoint is written. */
+    static GitletInfo load() {
+        if (deferred != null) {
+            return deferred.snapshot();
+        }
+        if (persisted != null && fingerprint().equals(fingerprint)) {
+            return persisted.snapshot();
+        }
+        if (!STATE.isFile() && LegacyState.FILE.isFile()) {
+            checkpoint(LegacyState.read());
+            LegacyState.FILE.delete();
+        }
+        ByteBuffer state = Utils.mapContents(STATE);
+        if (state.remaining() < HEADER_SIZE || state.getInt() != STATE_MAGIC) {
+            throw new IllegalArgumentException("not a gitlet state file");
+        }
+        generation = state.getLong();
+        GitletInfo info = new GitletInfo();
+        String headID = Utils.readString(state);
+        info.currBranch = Utils.readString(state);
+        readMap(state, info.branches);
+        readMap(state, info.stagingArea);
+        readSet(state, info.toUntrack);
+        readSet(state, info.removedFiles);
+        for (int n = state.getInt(); n > 0; n -= 1) {
+            String key = Utils.readString(state);
+            ArrayList<String> branches = new ArrayList<>();
+            for (int k = state.getInt(); k > 0; k -= 1) {
+                branches.add(Utils.readString(state));
+            }
+            info.splitpoints.put(key, branches);
+        }
+
+        ByteBuffer journal = Utils.mapContents(JOURNAL);
+        journalSize = 0;
+        if (journal.remaining() >= HEADER_SIZE
+            && journal.getInt() == JOURNAL_MAGIC
+            && journal.getLong() == generation) {
+            headID = replay(journal, info, headID);
+            journalSize = journal.position();
+            if (journal.limit() > journalSize) {
+                truncateJournal();
+            }
+        }
+
+        info.head = Gitlet.deserialization(headID);
+        persisted = info.snapshot();
+        fingerprint = fingerprint();
+        return info;
+    }
+
+    /** Apply the complete records in JOURNAL to INFO.  Returns the head
+     *  commit id, which starts out as HEADID.  A record cut short by a
+     *  crash ends the replay. */
+    private static String replay(ByteBuffer journal, GitletInfo info,
+                                 String headID) {
+        while (journal.remaining() >= 4) {
+            int start = journal.position();
+            int len = journal.getInt();
+            if (len <= 0 || journal.remaining() < len) {
+                journal.position(start);
+                break;
+            }
+            byte op = journal.get();
+            String a = Utils.readString(journal);
+            switch (op) {
+            case SET_HEAD:
+                headID = a;
+                break;
+            case SET_CURR_BRANCH:
+                info.currBranch = a;
+                break;
+            case PUT_BRANCH:
+                info.branches.put(a, Utils.readString(journal));
+                break;
+            case DEL_BRANCH:
+                info.branches.remove(a);
+                break;
+            case STAGE:
+                info.stagingArea.put(a, Utils.readString(journal));
+                break;
+            case UNSTAGE:
+                info.stagingArea.remove(a);
+                break;
+            case ADD_UNTRACK:
+                info.toUntrack.add(a);
+                break;
+            case DEL_UNTRACK:
+                info.toUntrack.remove(a);
+                break;
+            case ADD_REMOVED:
+                info.removedFiles.add(a);
+                break;
+            case DEL_REMOVED:
+                info.removedFiles.remove(a);
+                break;
+            case PUT_SPLITPOINT: {
+                ArrayList<String> branches = new ArrayList<>();
+                for (int k = journal.getInt(); k > 0; k -= 1) {
+                    branches.add(Utils.readString(journal));
+                }
+                info.splitpoints.put(a, branches);
+                break;
+            }
+            case DEL_SPLITPOINT:
+                info.splitpoints.remove(a);
+                break;
+            default:
+                throw new IllegalArgumentException("corrupt gitlet journal");
+            }
+            journal.position(start + 4 + len);
+        }
+        return headID;
+    }
+
+    /** Persist INFO.  Appends the differences from the last loaded or
+     *  saved state to the journal, or writes a full checkpoint if there
+     *  is no such state or the journal has grown too large. */
+    static void save(GitletInfo info) {
+        if (deferring) {
+            deferred = info.snapshot();
+            return;
+        }
+        if (persisted == null || !STATE.isFile()) {
+            checkpoint(info);
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            diff(persisted, info, out);
+            out.close();
+            if (bytes.size() > 0) {
+                if (journalSize < HEADER_SIZE) {
+                    writeJournalHeader();
+                }
+                try (FileOutputStream f = new FileOutputStream(JOURNAL, true)) {
+                    bytes.writeTo(f);
+                }
+                Stats.wrote(bytes.size());
+                journalSize += bytes.size();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        persisted = info.snapshot();
+        fingerprint = fingerprint();
+        if (journalSize > CHECKPOINT_BYTES) {
+            checkpoint(info);
+        }
+    }
+
+    /** Write all of INFO as a new checkpoint and start an empty journal. */
+    static void checkpoint(GitletInfo info) {
+        try {
+            File tmp = new File(STATE.getPath() + ".tmp");
+            try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(tmp)))) {
+                out.writeInt(STATE_MAGIC);
+                out.writeLong(generation + 1);
+                Utils.writeString(out, info.head.getSHA1());
+                Utils.writeString(out, info.currBranch);
+                writeMap(out, info.branches);
+                writeMap(out, info.stagingArea);
+                writeSet(out, info.toUntrack);
+                writeSet(out, info.removedFiles);
+                out.writeInt(info.splitpoints.size());
+                for (String a : info.splitpoints.keySet()) {
+                    Utils.writeString(out, a);
+                    writeSet(out, info.splitpoints.get(a));
+                }
+            }
+            Stats.wrote(tmp.length());
+            Files.move(tmp.toPath(), STATE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            generation += 1;
+            writeJournalHeader();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        persisted = info.snapshot();
+        fingerprint = fingerprint();
+    }
+
+    /** Returns the current fingerprint of the checkpoint and journal. */
+    private static String fingerprint() {
+        return stat(STATE) + "/" + stat(JOURNAL);
+    }
+
+    /** Returns the file key, size and modification time of F, or "-" if
+     *  it does not exist. */
+    private static String stat(File f) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return attrs.fileKey() + ":" + attrs.size() + ":"
+                + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException excp) {
+            return "-";
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Drop a partially written record from the end of the journal, so
+     *  that later appends are not hidden behind it. */
+    private static void truncateJournal() {
+        try (FileChannel ch = FileChannel.open(JOURNAL.toPath(),
+                                               StandardOpenOption.WRITE)) {
+            ch.truncate(journalSize);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Truncate the journal to a header for the current generation. */
+    private static void writeJournalHeader() throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new FileOutputStream(JOURNAL))) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeLong(generation);
+        }
+        journalSize = HEADER_SIZE;
+    }
+
+    /** Write to OUT the journal records that turn OLD into NOW. */
+    private static void diff(GitletInfo old, GitletInfo now,
+                             DataOutputStream out) throws IOException {
+        if (!old.head.getSHA1().equals(now.head.getSHA1())) {
+            record(out, SET_HEAD, now.head.getSHA1());
+        }
+        if (!old.currBranch.equals(now.currBranch)) {
+            record(out, SET_CURR_BRANCH, now.currBranch);
+        }
+        diffMap(old.branches, now.branches, PUT_BRANCH, DEL_BRANCH, out);
+        diffMap(old.stagingArea, now.stagingArea, STAGE, UNSTAGE, out);
+        diffSet(old.toUntrack, now.toUntrack, ADD_UNTRACK, DEL_UNTRACK, out);
+        diffSet(old.removedFiles, now.removedFiles,
+                ADD_REMOVED, DEL_REMOVED, out);
+        for (String a : old.splitpoints.keySet()) {
+            if (!now.splitpoints.containsKey(a)) {
+                record(out, DEL_SPLITPOINT, a);
+            }
+        }
+        for (String a : now.splitpoints.keySet()) {
+            ArrayList<String> branches = now.splitpoints.get(a);
+            if (!branches.equals(old.splitpoints.get(a))) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                DataOutputStream b = new DataOutputStream(body);
+                b.writeByte(PUT_SPLITPOINT);
+                Utils.writeString(b, a);
+                writeSet(b, branches);
+                out.writeInt(body.size());
+                body.writeTo(out);
+            }
+        }
+    }
+
+    private static void diffMap(HashMap<String, String> old,
+                                HashMap<String, String> now,
+                                byte put, byte del,
+                                DataOutputStream out) throws IOException {
+        for (String a : old.keySet()) {
+            if (!now.containsKey(a)) {
+                record(out, del, a);
+            }
+        }
+        for (String a : now.keySet()) {
+            if (!now.get(a).equals(old.get(a))) {
+                record(out, put, a, now.get(a));
+            }
+        }
+    }
+
+    private static void diffSet(HashSet<String> old, HashSet<String> now,
+                                byte add, byte del,
+                                DataOutputStream out) throws IOException {
+        for (String a : old) {
+            if (!now.contains(a)) {
+                record(out, del, a);
+            }
+        }
+        for (String a : now) {
+            if (!old.contains(a)) {
+                record(out, add, a);
+            }
+        }
+    }
+
+    /** Write a journal record of type OP with string operands ARGS. */
+    private static void record(DataOutputStream out, byte op, String... args)
+        throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream b = new DataOutputStream(body);
+        b.writeByte(op);
+        for (String a : args) {
+            Utils.writeString(b, a);
+        }
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    private static void writeMap(DataOutputStream out,
+                                 HashMap<String, String> m)
+        throws IOException {
+        out.writeInt(m.size());
+        for (String a : m.keySet()) {
+            Utils.writeString(out, a);
+            Utils.writeString(out, m.get(a));
+        }
+    }
+
+    private static void writeSet(DataOutputStream out,
+                                 Collection<String> s) throws IOException {
+        out.writeInt(s.size());
+        for (String a : s) {
+            Utils.writeString(out, a);
+        }
+    }
+
+    private static void readMap(ByteBuffer buf, HashMap<String, String> m) {
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            m.put(Utils.readString(buf), Utils.readString(buf));
+        }
+    }
+
+    private static void readSet(ByteBuffer buf, HashSet<String> s) {
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            s.add(Utils.readString(buf));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Instrumentation of the command being run: the time spent in each of
+ *  the PHASES, the files and bytes read and written, and the commits
+ *  decoded.  Phases nest (hashing a file being stored is also part of
+ *  storing it), so their times overlap.  Bytes are counted where files
+ *  are read or written through Utils, the object store, the commit pack,
+ *  the state files and the stat index; a mapped file counts as read in
+ *  full.  The small appends to the lookup indexes are left out.
+ *
+ *  The counts are reported after the command with the --stats option,
+ *  or written as JSON to FILE with --stats-json=FILE.  Each phase and
+ *  command is also a JFR event (gitlet.Phase and gitlet.Command), for
+ *  use with a flight recording such as -XX:StartFlightRecording gives.
+ *  Counting is always on: it costs far less than the work counted.
+ */
+class Stats {
+
+    /** The phases timed, as indexes into PHASES. */
+    static final int LOAD_STATE = 0, SAVE_STATE = 1, READ_COMMIT = 2,
+        WRITE_COMMIT = 3, READ_FILE = 4, WRITE_FILE = 5, HASH = 6,
+        STORE_BLOB = 7, CHECKOUT_BLOB = 8;
+
+    /** The names of the phases. */
+    static final String[] PHASES = {
+        "load state", "save state", "read commit", "write commit",
+        "read file", "write file", "hash", "store blob", "checkout blob",
+    };
+
+    private static final LongAdder[] CALLS = adders(PHASES.length);
+    private static final LongAdder[] NANOS = adders(PHASES.length);
+    private static final LongAdder FILES_READ = new LongAdder();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder FILES_WRITTEN = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    private static final LongAdder COMMITS_DECODED = new LongAdder();
+
+    /** Where to report the next command: null for nowhere, "" for
+     *  standard output, and otherwise the file to write JSON to. */
+    private static String report;
+
+    /** The command being run, when it started, and the commit cache's
+     *  hits, misses and evictions then. */
+    private static String command;
+    private static long started;
+    private static long[] cache;
+    private static CommandEvent event;
+    /** The number of commands started and not finished: a batch runs
+     *  commands within itself, which count as part of it. */
+    private static int depth;
+
+    /** A phase of a command, for JFR. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    /** A command, for JFR. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+        @Label("Commits Decoded")
+        long commitsDecoded;
+    }
+
+    /** Report the next command to WHERE, as for report. */
+    static void reportTo(String where) {
+        report = where;
+    }
+
+    /** Start counting for COMMAND, from zero, unless it is run by
+     *  another command. */
+    static void start(String command) {
+        depth += 1;
+        if (depth > 1) {
+            return;
+        }
+        for (int i = 0; i < PHASES.length; i += 1) {
+            CALLS[i].reset();
+            NANOS[i].reset();
+        }
+        for (LongAdder a : new LongAdder[] {
+                FILES_READ, BYTES_READ, FILES_WRITTEN, BYTES_WRITTEN,
+                COMMITS_DECODED }) {
+            a.reset();
+        }
+        Stats.command = command;
+        cache = new long[] {
+            CommitCache.hits(), CommitCache.misses(), CommitCache.evictions()
+        };
+        event = new CommandEvent();
+        event.begin();
+        started = System.nanoTime();
+    }
+
+    /** Finish counting for the command started last, and report it as
+     *  asked. */
+    static void finish() {
+        depth -= 1;
+        if (depth > 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        event.command = command;
+        event.bytesRead = BYTES_READ.sum();
+        event.bytesWritten = BYTES_WRITTEN.sum();
+        event.commitsDecoded = COMMITS_DECODED.sum();
+        event.commit();
+        String where = report;
+        report = null;
+        if (where == null) {
+            return;
+        } else if (where.isEmpty()) {
+            print(System.out, elapsed);
+        } else {
+            Utils.writeContents(new File(where),
+                json(elapsed).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Returns the start time of a phase, for end. */
+    static long begin() {
+        return System.nanoTime();
+    }
+
+    /** Note the end of a phase PHASE that began at BEGIN. */
+    static void end(int phase, long begin) {
+        long elapsed = System.nanoTime() - begin;
+        CALLS[phase].increment();
+        NANOS[phase].add(elapsed);
+        PhaseEvent e = new PhaseEvent();
+        if (e.isEnabled()) {
+            e.phase = PHASES[phase];
+            e.elapsed = elapsed;
+            e.commit();
+        }
+    }
+
+    /** Note that a file of BYTES bytes was read. */
+    static void read(long bytes) {
+        FILES_READ.increment();
+        BYTES_READ.add(bytes);
+    }
+
+    /** Note that BYTES bytes were written to a file. */
+    static void wrote(long bytes) {
+        FILES_WRITTEN.increment();
+        BYTES_WRITTEN.add(bytes);
+    }
+
+    /** Note that a commit was decoded. */
+    static void decoded() {
+        COMMITS_DECODED.increment();
+    }
+
+    /** Print the counts to OUT, the command having taken ELAPSED ns. */
+    private static void print(PrintStream out, long elapsed) {
+        out.printf("=== Stats: %s ===%n", command);
+        out.printf("%-16s%8s%12s%n", "phase", "calls", "ms");
+        for (int i = 0; i < PHASES.length; i += 1) {
+            if (CALLS[i].sum() > 0) {
+                out.printf("%-16s%8d%12.3f%n", PHASES[i], CALLS[i].sum(),
+                           NANOS[i].sum() / 1e6);
+            }
+        }
+        out.printf("%-16s%8s%12.3f%n", "total", "", elapsed / 1e6);
+        out.printf("%d files read (%d bytes), %d written (%d bytes).%n",
+                   FILES_READ.sum(), BYTES_READ.sum(),
+                   FILES_WRITTEN.sum(), BYTES_WRITTEN.sum());
+        long[] c = cacheCounts();
+        out.printf("%d commits decoded; commit cache %d hits, %d misses, "
+                   + "%d evictions.%n", COMMITS_DECODED.sum(),
+                   c[0], c[1], c[2]);
+    }
+
+    /** Returns the counts as JSON, the command having taken ELAPSED
+     *  ns. */
+    private static String json(long elapsed) {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"command\": ").append(quote(command))
+            .append(", \"ms\": ")
+            .append(String.format(Locale.ROOT, "%.3f", elapsed / 1e6))
+            .append(", \"phases\": {");
+        String sep = "";
+        for (int i = 0; i < PHASES.length; i += 1) {
+            if (CALLS[i].sum() > 0) {
+                json.append(sep).append('"').append(PHASES[i])
+                    .append("\": {\"calls\": ").append(CALLS[i].sum())
+                    .append(String.format(Locale.ROOT, ", \"ms\": %.3f}",
+                                          NANOS[i].sum() / 1e6));
+                sep = ", ";
+            }
+        }
+        long[] c = cacheCounts();
+        json.append("}, \"filesRead\": ").append(FILES_READ.sum())
+            .append(", \"bytesRead\": ").append(BYTES_READ.sum())
+            .append(", \"filesWritten\": ").append(FILES_WRITTEN.sum())
+            .append(", \"bytesWritten\": ").append(BYTES_WRITTEN.sum())
+            .append(", \"commitsDecoded\": ").append(COMMITS_DECODED.sum())
+            .append(", \"commitCache\": {\"hits\": ").append(c[0])
+            .append(", \"misses\": ").append(c[1])
+            .append(", \"evictions\": ").append(c[2]).append("}}\n");
+        return json.toString();
+    }
+
+    /** Returns S as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                result.append('\\').append(c);
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            case '\t':
+                result.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    result.append(String.format(Locale.ROOT, "\\u%04x",
+                                                (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** Returns the commit cache's hits, misses and evictions during the
+     *  command. */
+    private static long[] cacheCounts() {
+        return new long[] {
+            CommitCache.hits() - cache[0], CommitCache.misses() - cache[1],
+            CommitCache.evictions() - cache[2]
+        };
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] result = new LongAdder[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+}
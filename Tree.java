@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory snapshot: the blob ids of the files directly in a
+ *  directory and the tree ids of its subdirectories.  Trees are
+ *  content-addressed and kept in the object store, so a directory that
+ *  does not change between commits is stored once and shared, and two
+ *  snapshots can be compared directory by directory, skipping any
+ *  subtree whose id is the same in both.
+ *
+ *  Paths are relative to the working directory and use "/" as their
+ *  separator.
+ */
+class Tree {
+
+    /** Prefix of the stored form of every tree, which also keeps tree ids
+     *  from ever coinciding with the id of a file. */
+    private static final byte[] HEADER =
+        "tree\0".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte BLOB = 0;
+    private static final byte TREE = 1;
+
+    /** Receives the differences found by diff. */
+    interface Visitor {
+        /** Called for each file PATH whose blob id changes from OLDID to
+         *  NEWID.  A null id means the file is absent on that side. */
+        void changed(String path, String oldID, String newID);
+    }
+
+    /** Files directly in this directory, by name. */
+    private final TreeMap<String, String> blobs = new TreeMap<>();
+    /** Subdirectories, by name. */
+    private final TreeMap<String, String> trees = new TreeMap<>();
+
+    /** Returns the tree ID, which is empty if ID is null. */
+    static Tree read(String id) {
+        Tree t = new Tree();
+        if (id == null) {
+            return t;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(ObjectStore.readBytes(id));
+        buf.position(HEADER.length);
+        byte[] entry = new byte[ObjectId.SIZE];
+        while (buf.hasRemaining()) {
+            byte type = buf.get();
+            String name = Utils.readString(buf);
+            buf.get(entry);
+            (type == TREE ? t.trees : t.blobs)
+                .put(name, ObjectId.toHex(entry, 0, ObjectId.SIZE));
+        }
+        return t;
+    }
+
+    /** Returns the id of the tree that results from applying CHANGES to
+     *  tree BASE (null for none).  CHANGES maps paths to their new blob
+     *  ids, or to null for paths to remove.  Only the directories on the
+     *  paths of CHANGES are rebuilt; every other subtree is reused. */
+    static String update(String base, Map<String, String> changes) {
+        return read(base).apply(changes).write();
+    }
+
+    /** Returns the id of the tree holding exactly FILES, a map from paths
+     *  to blob ids. */
+    static String build(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Report to VISIT every file whose blob differs between trees A and
+     *  B (either may be null), prefixing paths with PREFIX.  Subtrees with
+     *  the same id on both sides are skipped without being read. */
+    static void diff(String a, String b, String prefix, Visitor visit) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree ta = read(a), tb = read(b);
+        TreeSet<String> names = new TreeSet<>(ta.blobs.keySet());
+        names.addAll(tb.blobs.keySet());
+        for (String name : names) {
+            String x = ta.blobs.get(name), y = tb.blobs.get(name);
+            if (!Objects.equals(x, y)) {
+                visit.changed(prefix + name, x, y);
+            }
+        }
+        names = new TreeSet<>(ta.trees.keySet());
+        names.addAll(tb.trees.keySet());
+        for (String name : names) {
+            diff(ta.trees.get(name), tb.trees.get(name),
+                 prefix + name + "/", visit);
+        }
+    }
+
+    /** Add every file in tree ID to FILES, prefixing paths with
+     *  PREFIX. */
+    static void flatten(String id, String prefix, Map<String, String> files) {
+        Tree t = read(id);
+        for (String name : t.blobs.keySet()) {
+            files.put(prefix + name, t.blobs.get(name));
+        }
+        for (String name : t.trees.keySet()) {
+            flatten(t.trees.get(name), prefix + name + "/", files);
+        }
+    }
+
+    /** Apply CHANGES (as for update) to me, writing any changed
+     *  subtrees, and return me. */
+    private Tree apply(Map<String, String> changes) {
+        HashMap<String, HashMap<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    blobs.remove(path);
+                } else {
+                    blobs.put(path, e.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (String dir : below.keySet()) {
+            Tree sub = read(trees.get(dir)).apply(below.get(dir));
+            if (sub.blobs.isEmpty() && sub.trees.isEmpty()) {
+                trees.remove(dir);
+            } else {
+                trees.put(dir, sub.write());
+            }
+        }
+        return this;
+    }
+
+    /** Store me in the object store, if I am not there already, and
+     *  return my id. */
+    private String write() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(HEADER);
+            TreeSet<String> names = new TreeSet<>(blobs.keySet());
+            names.addAll(trees.keySet());
+            for (String name : names) {
+                boolean isTree = trees.containsKey(name);
+                out.writeByte(isTree ? TREE : BLOB);
+                Utils.writeString(out, name);
+                out.write(ObjectId.fromHex(isTree ? trees.get(name)
+                                           : blobs.get(name)).toBytes());
+            }
+            out.close();
+            byte[] contents = bytes.toByteArray();
+            String id = Utils.sha1(contents);
+            ObjectStore.store(contents, id);
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -1,8 +1,29 @@
 package gitlet;
 
-import ucb.junit.textui;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
 import org.junit.Test;
+import org.junit.runner.JUnitCore;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -12,7 +33,7 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        JUnitCore.runClasses(UnitTest.class);
     }
 
     /** A dummy test to avoid complaint. */
@@ -20,6 +41,894 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Ids survive a round trip through hex and raw bytes. */
+    @Test
+    public void objectIdRoundTripTest() {
+        String hex = Utils.sha1("gitlet");
+        ObjectId id = ObjectId.fromHex(hex);
+        assertEquals(hex, id.toString());
+        assertEquals(id, ObjectId.fromBytes(id.toBytes(), 0));
+        assertTrue(id.compareTo(ObjectId.fromHex(Utils.sha1("other"))) != 0);
+    }
+
+    /** Hashing a file as a stream agrees with hashing its contents. */
+    @Test
+    public void fileHashTest() throws IOException {
+        File f = File.createTempFile("gitlet", ".txt");
+        f.deleteOnExit();
+        byte[] contents = new byte[200000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31);
+        }
+        Utils.writeContents(f, contents);
+        assertEquals(Utils.sha1(contents), Utils.sha1(f));
+    }
+
+    /** Every codec decodes what it encodes, across block boundaries and
+     *  for both repetitive and incompressible input. */
+    @Test
+    public void codecRoundTripTest() throws IOException {
+        byte[] contents = new byte[300000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i < 150000 ? "gitlet\n".charAt(i % 7)
+                                  : i * i * 31 >>> 7);
+        }
+        for (Codec codec : Codec.ALL) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = codec.encode(bytes)) {
+                out.write(contents);
+            }
+            try (InputStream in = codec.decode(
+                     new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertArrayEquals(codec.name(), contents, in.readAllBytes());
+            }
+        }
+    }
+
+    /** A delta rebuilds its target from its base, including when the
+     *  target moves, repeats, drops and inserts parts of the base. */
+    @Test
+    public void deltaTest() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            b.append("line ").append(i).append('\n');
+        }
+        byte[] base = b.toString().getBytes();
+        String t = b.substring(9000) + "inserted text\n" + b.substring(100, 5000)
+            + b.substring(100, 5000);
+        byte[] target = t.getBytes();
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertArrayEquals(base, Delta.apply(target, Delta.create(target, base)));
+        assertArrayEquals(new byte[0], Delta.apply(base,
+                                                   Delta.create(base, new byte[0])));
+    }
 
+    /** Batch scripts split into words at blanks, except inside quotes. */
+    @Test
+    public void batchSplitTest() {
+        assertEquals(Arrays.asList("commit", "two words", "it's", ""),
+                     Batch.split("commit \"two words\" it\\'s ''"));
+        assertEquals(Arrays.asList("a\"b", "c d"),
+                     Batch.split("  \"a\\\"b\" c' 'd  "));
+        assertTrue(Batch.split("# add x").isEmpty());
+        assertTrue(Batch.split("   ").isEmpty());
+    }
 
+    /** A batch reports a command that fails, with its line, and runs
+     *  the rest of the script. */
+    @Test
+    public void batchFailureTest() throws IOException {
+        repository();
+        String out = printed(() -> Batch.run(new StringReader(
+            "rm\nstatus\nbranch batch-after-failure\n")));
+        assertTrue(out.startsWith("batch: java.lang."));
+        assertTrue(out.contains("Exception"));
+        assertTrue(out.contains(": rm\n"));
+        assertTrue(out.contains("ms: status\n"));
+        assertTrue(out.contains("ms: branch batch-after-failure\n"));
+        assertTrue(out.endsWith("ms: 2 commands\n"));
+        assertTrue(StateJournal.load().branches
+                   .containsKey("batch-after-failure"));
+    }
+
+    /** Line merges combine changes to separate lines and mark only the
+     *  lines changed differently on both sides. */
+    @Test
+    public void lineMergeTest() throws IOException {
+        byte[] base = "a\nb\nc\nd\ne\n".getBytes();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(Merge.merge(base, "A\nb\nc\nd\ne\n".getBytes(),
+                               "a\nb\nc\nd\nE\nf".getBytes(), out));
+        assertEquals("A\nb\nc\nd\nE\nf", out.toString());
+        out.reset();
+        assertFalse(Merge.merge(base, "a\nb\nX\nd\ne\n".getBytes(),
+                                "a\nb\nY\nd\ne\n".getBytes(), out));
+        assertEquals("a\nb\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nd\ne\n",
+                     out.toString());
+    }
+
+    /** Chunks are bounded in size, and an insertion changes only the
+     *  chunks around it. */
+    @Test
+    public void chunkerTest() throws IOException {
+        byte[] contents = new byte[8 << 20];
+        new Random(7).nextBytes(contents);
+        List<byte[]> before = chunks(contents);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(contents, 0, 3 << 20);
+        edited.write("inserted".getBytes());
+        edited.write(contents, 3 << 20, contents.length - (3 << 20));
+        List<byte[]> after = chunks(edited.toByteArray());
+
+        HashSet<String> ids = new HashSet<>();
+        int total = 0;
+        for (int i = 0; i < before.size(); i += 1) {
+            byte[] chunk = before.get(i);
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            assertTrue(chunk.length >= Chunker.MIN_SIZE
+                       || i == before.size() - 1);
+            ids.add(Utils.sha1((Object) chunk));
+            total += chunk.length;
+        }
+        assertEquals(contents.length, total);
+        int changed = 0;
+        for (byte[] chunk : after) {
+            if (!ids.contains(Utils.sha1((Object) chunk))) {
+                changed += 1;
+            }
+        }
+        assertTrue(changed >= 1 && changed <= 2);
+    }
+
+    /** Journal records replay over the checkpoint; a record torn by a
+     *  crash is dropped, and later records still count; deferred saves
+     *  reach the disk only when flushed. */
+    @Test
+    public void stateJournalTest() throws IOException {
+        repository();
+        gitlet("branch", "journal-a");
+        reload();
+        GitletInfo info = StateJournal.load();
+        assertTrue(info.branches.containsKey("journal-a"));
+
+        long size = StateJournal.JOURNAL.length();
+        Files.write(StateJournal.JOURNAL.toPath(),
+                    new byte[] { 0, 0, 0, 40, 3, 0, 0 },
+                    StandardOpenOption.APPEND);
+        info = StateJournal.load();
+        assertTrue(info.branches.containsKey("journal-a"));
+        assertEquals(size, StateJournal.JOURNAL.length());
+        gitlet("branch", "journal-b");
+        reload();
+        info = StateJournal.load();
+        assertTrue(info.branches.containsKey("journal-a"));
+        assertTrue(info.branches.containsKey("journal-b"));
+
+        StateJournal.checkpoint(info);
+        assertEquals(12, StateJournal.JOURNAL.length());
+        reload();
+        assertEquals(info.branches, StateJournal.load().branches);
+
+        StateJournal.defer(true);
+        try {
+            info = StateJournal.load();
+            info.branches.remove("journal-a");
+            StateJournal.save(info);
+            assertEquals(12, StateJournal.JOURNAL.length());
+            assertFalse(StateJournal.load().branches.containsKey("journal-a"));
+            StateJournal.flush();
+            assertTrue(StateJournal.JOURNAL.length() > 12);
+        } finally {
+            StateJournal.defer(false);
+        }
+        reload();
+        info = StateJournal.load();
+        assertFalse(info.branches.containsKey("journal-a"));
+        assertTrue(info.branches.containsKey("journal-b"));
+    }
+
+    /** Reset restores tracked files edited or deleted in the working
+     *  directory, even where the commit reset to is the current one. */
+    @Test
+    public void resetRestoresTest() throws IOException {
+        repository();
+        Utils.writeContents(new File("reset1.txt"), "one\n".getBytes());
+        Utils.writeContents(new File("reset2.txt"), "two\n".getBytes());
+        gitlet("add", "reset1.txt");
+        gitlet("add", "reset2.txt");
+        gitlet("commit", "reset files");
+        String id = StateJournal.load().head.getSHA1();
+        Utils.writeContents(new File("reset1.txt"), "edited\n".getBytes());
+        new File("reset2.txt").delete();
+        gitlet("reset", id);
+        assertEquals("one\n",
+                     new String(Utils.readContents(new File("reset1.txt"))));
+        assertEquals("two\n",
+                     new String(Utils.readContents(new File("reset2.txt"))));
+    }
+
+    /** Objects read back the same after gc packs them, chunked ones
+     *  included, and a later gc packs objects stored since. */
+    @Test
+    public void packTest() throws IOException {
+        repository();
+        byte[] big = new byte[3 << 20];
+        new Random(11).nextBytes(big);
+        Utils.writeContents(new File("pack-big.bin"), big);
+        Utils.writeContents(new File("pack-small.txt"), "small\n".getBytes());
+        gitlet("add", "pack-big.bin");
+        gitlet("add", "pack-small.txt");
+        gitlet("commit", "pack files");
+        gitlet("gc");
+        assertFalse(Pack.names().isEmpty());
+        String bigID = Utils.sha1((Object) big);
+        assertTrue(Pack.contains(bigID));
+        assertNotNull(Pack.chunkList(bigID));
+        assertArrayEquals(big, ObjectStore.readBytes(bigID));
+        assertArrayEquals("small\n".getBytes(),
+            ObjectStore.readBytes(Utils.sha1((Object) "small\n".getBytes())));
+
+        byte[] later = "stored after gc\n".getBytes();
+        String laterID = Utils.sha1((Object) later);
+        assertFalse(Pack.contains(laterID));
+        ObjectStore.store(later, laterID);
+        Utils.writeContents(new File("pack-later.txt"), later);
+        gitlet("add", "pack-later.txt");
+        gitlet("commit", "pack later");
+        gitlet("gc");
+        assertTrue(Pack.contains(laterID));
+        assertArrayEquals(later, ObjectStore.readBytes(laterID));
+        assertArrayEquals(big, ObjectStore.readBytes(bigID));
+    }
+
+    /** Generations count the longest path from a root, ancestry follows
+     *  both parents of merges, and the merge base of a criss-cross merge
+     *  is one of its two lowest common ancestors. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        repository();
+        Commit root = graphCommit("graph root", null, null);
+        Commit a = graphCommit("graph a", root, null);
+        Commit b = graphCommit("graph b", a, null);
+        Commit c = graphCommit("graph c", a, null);
+        Commit m1 = graphCommit("graph m1", b, c);
+        Commit m2 = graphCommit("graph m2", c, b);
+        Commit d = graphCommit("graph d", m1, null);
+        Commit other = graphCommit("graph other root", null, null);
+
+        int[] generations = { 1, 2, 3, 3, 4, 4, 5, 1 };
+        Commit[] commits = { root, a, b, c, m1, m2, d, other };
+        for (int i = 0; i < commits.length; i += 1) {
+            assertEquals(generations[i], CommitGraph.generation(
+                CommitGraph.index(commits[i].getSHA1())));
+        }
+
+        assertTrue(CommitGraph.isAncestor(a.getSHA1(), a.getSHA1()));
+        assertTrue(CommitGraph.isAncestor(c.getSHA1(), d.getSHA1()));
+        assertTrue(CommitGraph.isAncestor(b.getSHA1(), m2.getSHA1()));
+        assertTrue(CommitGraph.isAncestor(root.getSHA1(), d.getSHA1()));
+        assertFalse(CommitGraph.isAncestor(m2.getSHA1(), d.getSHA1()));
+        assertFalse(CommitGraph.isAncestor(d.getSHA1(), a.getSHA1()));
+        assertFalse(CommitGraph.isAncestor(other.getSHA1(), d.getSHA1()));
+
+        assertEquals(a.getSHA1(),
+                     CommitGraph.mergeBase(b.getSHA1(), c.getSHA1()));
+        assertEquals(b.getSHA1(),
+                     CommitGraph.mergeBase(d.getSHA1(), b.getSHA1()));
+        List<String> lowest = Arrays.asList(b.getSHA1(), c.getSHA1());
+        assertTrue(lowest.contains(
+            CommitGraph.mergeBase(m1.getSHA1(), m2.getSHA1())));
+        assertTrue(lowest.contains(
+            CommitGraph.mergeBase(d.getSHA1(), m2.getSHA1())));
+        assertNull(CommitGraph.mergeBase(other.getSHA1(), d.getSHA1()));
+    }
+
+    /** Merging a descendant fast-forwards, and merging a branch with no
+     *  history in common is refused. */
+    @Test
+    public void mergeTest() throws IOException {
+        repository();
+        gitlet("branch", "merge-ff");
+        gitlet("checkout", "merge-ff");
+        Utils.writeContents(new File("merge-ff.txt"), "ff\n".getBytes());
+        gitlet("add", "merge-ff.txt");
+        gitlet("commit", "merge ff");
+        String ahead = StateJournal.load().head.getSHA1();
+        gitlet("checkout", "master");
+        assertFalse(new File("merge-ff.txt").exists());
+        assertEquals("Current branch fast-forwarded.\n",
+                     gitlet("merge", "merge-ff"));
+        assertEquals(ahead, StateJournal.load().head.getSHA1());
+        assertTrue(new File("merge-ff.txt").isFile());
+
+        GitletInfo info = StateJournal.load();
+        info.branches.put("merge-unrelated",
+                          graphCommit("merge unrelated", null, null)
+                          .getSHA1());
+        StateJournal.save(info);
+        assertEquals("Given branch shares no history with the current "
+                     + "branch.\n", gitlet("merge", "merge-unrelated"));
+        assertEquals(ahead, StateJournal.load().head.getSHA1());
+    }
+
+    /** Returns a stored commit with message MESSAGE, no files, and
+     *  parents PARENT and SECOND (either may be null). */
+    private static Commit graphCommit(String message, Commit parent,
+                                      Commit second) {
+        return storedCommit(message, parent, second, new HashMap<>());
+    }
+
+    /** Returns a stored commit with message MESSAGE, files FILES, and
+     *  parents PARENT and SECOND (either may be null). */
+    private static Commit storedCommit(String message, Commit parent,
+                                       Commit second,
+                                       HashMap<String, String> files) {
+        graphCommits += 1;
+        Commit c = new Commit(null,
+                              parent == null ? null : parent.getSHA1(),
+                              second == null ? null : second.getSHA1(),
+                              Tree.build(files),
+                              String.format("2020-01-01 %02d:%02d:%02d",
+                                            graphCommits / 3600,
+                                            graphCommits / 60 % 60,
+                                            graphCommits % 60),
+                              message, files);
+        c.setSHA1();
+        CommitStore.put(c);
+        return c;
+    }
+
+    /** The number of commits storedCommit has made. */
+    private static int graphCommits;
+
+    /** Prefix lookups of any number of bits find the matching records of
+     *  both the sorted run and the unsorted tail. */
+    @Test
+    public void sortedTablePrefixTest() throws IOException {
+        File f = File.createTempFile("gitlet", ".idx");
+        f.deleteOnExit();
+        SortedTable table = new SortedTable(f, 2, 4);
+        Random random = new Random(5);
+        ArrayList<byte[]> all = new ArrayList<>();
+        ArrayList<byte[]> run = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            byte[] rec = new byte[4];
+            random.nextBytes(rec);
+            rec[0] &= 0x7f;
+            run.add(rec);
+        }
+        all.addAll(run);
+        table.rewrite(run);
+        ArrayList<byte[]> tail = new ArrayList<>();
+        for (int i = 0; i < 10; i += 1) {
+            byte[] rec = new byte[4];
+            random.nextBytes(rec);
+            rec[0] |= 0x80;
+            tail.add(rec);
+        }
+        all.addAll(tail);
+        table.append(tail);
+        assertEquals(all.size(), table.size());
+
+        for (byte[] rec : all) {
+            for (int bits = 1; bits <= 16; bits += 1) {
+                HashSet<String> expected = new HashSet<>();
+                for (byte[] other : all) {
+                    if (startsWith(other, rec, bits)) {
+                        expected.add(Arrays.toString(other));
+                    }
+                }
+                HashSet<String> found = new HashSet<>();
+                for (byte[] other : table.findPrefix(rec, bits, 1000)) {
+                    found.add(Arrays.toString(other));
+                }
+                assertEquals(expected, found);
+            }
+        }
+        byte[] missing = { (byte) 0xff, (byte) 0xff };
+        boolean present = false;
+        for (byte[] rec : all) {
+            present |= startsWith(rec, missing, 16);
+        }
+        assertEquals(present, table.find(missing) != null);
+    }
+
+    /** Returns true iff the first BITS bits of A and B are equal. */
+    private static boolean startsWith(byte[] a, byte[] b, int bits) {
+        for (int i = 0; i < bits; i += 1) {
+            int mask = 0x80 >> (i % 8);
+            if ((a[i / 8] & mask) != (b[i / 8] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Abbreviated commit ids, of odd length or even, resolve to every
+     *  stored commit they start, and an ambiguous one is reported. */
+    @Test
+    public void commitPrefixTest() throws IOException {
+        repository();
+        for (int i = 0; i < 20; i += 1) {
+            graphCommit("prefix " + i, null, null);
+        }
+        List<String> ids = CommitStore.ids();
+        for (String id : ids) {
+            for (int len = 1; len <= 7; len += 1) {
+                String prefix = id.substring(0, len);
+                ArrayList<String> expected = new ArrayList<>();
+                for (String other : ids) {
+                    if (other.startsWith(prefix)) {
+                        expected.add(other);
+                    }
+                }
+                expected.sort(null);
+                assertEquals(expected, CommitStore.matching(prefix, 1000));
+                assertEquals(expected,
+                    CommitStore.matching(prefix.toUpperCase(), 1000));
+            }
+            assertEquals(List.of(id), CommitStore.matching(id, 2));
+        }
+        assertTrue(CommitStore.matching("xyz", 2).isEmpty());
+
+        String ambiguous = null;
+        for (String id : ids) {
+            if (CommitStore.matching(id.substring(0, 1), 2).size() == 2) {
+                ambiguous = id.substring(0, 1);
+            }
+        }
+        assertNotNull(ambiguous);
+        assertEquals("Ambiguous commit id " + ambiguous + ".\n",
+                     gitlet("checkout", ambiguous, "--", "prefix.txt"));
+    }
+
+    /** The commit cache evicts the least recently used commits once it
+     *  is full, and keeps a commit larger than all of it by itself. */
+    @Test
+    public void commitCacheTest() {
+        long capacity = Long.getLong(CommitCache.PROPERTY, 64) << 20;
+        Commit a = cacheCommit("cache a", capacity / 3);
+        Commit b = cacheCommit("cache b", capacity / 3);
+        Commit c = cacheCommit("cache c", capacity / 3);
+        long evictions = CommitCache.evictions();
+        CommitCache.put(a);
+        CommitCache.put(b);
+        assertSame(a, CommitCache.get(a.getSHA1()));
+        CommitCache.put(c);
+        assertTrue(CommitCache.weight() <= capacity);
+        assertNull(CommitCache.get(b.getSHA1()));
+        assertSame(a, CommitCache.get(a.getSHA1()));
+        assertSame(c, CommitCache.get(c.getSHA1()));
+
+        Commit big = cacheCommit("cache big", capacity + 1);
+        CommitCache.put(big);
+        assertSame(big, CommitCache.get(big.getSHA1()));
+        assertNull(CommitCache.get(a.getSHA1()));
+        assertNull(CommitCache.get(c.getSHA1()));
+        assertTrue(CommitCache.evictions() - evictions >= 3);
+    }
+
+    /** Returns an unstored commit with message MESSAGE and enough files
+     *  that the commit cache weighs it at about WEIGHT bytes. */
+    private static Commit cacheCommit(String message, long weight) {
+        HashMap<String, String> files = new HashMap<>();
+        // Each file weighs 200 bytes plus two for each of its 13 characters.
+        for (int i = 0; 226 * i < weight; i += 1) {
+            files.put(String.format("cache/f%06d", i), Utils.sha1("" + i));
+        }
+        Commit c = new Commit(null, null, null, null, "2020-01-01 00:00:00",
+                              message, files);
+        c.setSHA1();
+        return c;
+    }
+
+    /** Commits whose files are stored as changes from their parents'
+     *  read back with the same files, across the snapshots taken every so
+     *  many commits, and with files added, changed, deleted and renamed,
+     *  whether decoded one at a time or by a scan.  A snapshot refers to
+     *  the commit's tree rather than listing its files. */
+    @Test
+    public void commitManifestTest() throws IOException {
+        repository();
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 20; i += 1) {
+            files.put("manifest/f" + i, Utils.sha1("manifest " + i));
+        }
+        ArrayList<Commit> commits = new ArrayList<>();
+        Commit parent = null;
+        for (int n = 0; n < 40; n += 1) {
+            files.put("manifest/f" + (n % 20), Utils.sha1("changed " + n));
+            files.put("manifest/new" + n, Utils.sha1("new " + n));
+            if (n % 3 == 0) {
+                files.remove("manifest/new" + (n / 2));
+            }
+            if (n % 5 == 0) {
+                String renamed = "manifest/f" + (n % 20);
+                files.put(renamed + "-" + n, files.remove(renamed));
+            }
+            parent = storedCommit("manifest " + n, parent, null,
+                                  new HashMap<>(files));
+            commits.add(parent);
+        }
+
+        CommitCache.put(cacheCommit("manifest evict",
+            (Long.getLong(CommitCache.PROPERTY, 64) << 20) + 1));
+        for (int n = commits.size() - 1; n >= 0; n -= 1) {
+            Commit c = commits.get(n);
+            assertEquals(c.getFilesTracked(),
+                         CommitStore.get(c.getSHA1()).getFilesTracked());
+        }
+        HashMap<String, HashMap<String, String>> scanned = new HashMap<>();
+        CommitStore.scan(c -> scanned.put(c.getSHA1(), c.getFilesTracked()));
+        for (Commit c : commits) {
+            assertEquals(c.getFilesTracked(), scanned.get(c.getSHA1()));
+        }
+
+        HashMap<String, String> many = new HashMap<>();
+        for (int i = 0; i < 1000; i += 1) {
+            many.put("manifest/many/f" + i, Utils.sha1("many " + i));
+        }
+        long before = CommitStore.PACK.length();
+        Commit snapshot = storedCommit("manifest snapshot", null, null, many);
+        assertTrue(CommitStore.PACK.length() - before < 1000);
+        CommitCache.put(cacheCommit("manifest evict again",
+            (Long.getLong(CommitCache.PROPERTY, 64) << 20) + 1));
+        assertEquals(many,
+                     CommitStore.get(snapshot.getSHA1()).getFilesTracked());
+    }
+
+    /** The stat index answers from its entries only for files last
+     *  modified before it was written: one modified in the same tick
+     *  could have changed again unnoticed, so it is rehashed. */
+    @Test
+    public void statIndexTest() throws IOException {
+        repository();
+        File f = new File("stat.txt");
+        FileTime mtime = FileTime.fromMillis(
+            System.currentTimeMillis() / 1000 * 1000 - 60000);
+        Utils.writeContents(f, "aaaa".getBytes());
+        Files.setLastModifiedTime(f.toPath(), mtime);
+        assertEquals(Utils.sha1((Object) "aaaa".getBytes()),
+                     StatIndex.idOf(f));
+        StatIndex.save();
+
+        Utils.writeContents(f, "bbbb".getBytes());
+        Files.setLastModifiedTime(f.toPath(), mtime);
+        Files.setLastModifiedTime(StatIndex.INDEX.toPath(),
+                                  FileTime.fromMillis(mtime.toMillis() + 1000));
+        assertEquals("a clean entry is trusted",
+                     Utils.sha1((Object) "aaaa".getBytes()),
+                     StatIndex.idOf(f));
+        Files.setLastModifiedTime(StatIndex.INDEX.toPath(), mtime);
+        assertEquals("a racily clean entry is rehashed",
+                     Utils.sha1((Object) "bbbb".getBytes()),
+                     StatIndex.idOf(f));
+        f.delete();
+        StatIndex.forget(f);
+        StatIndex.save();
+    }
+
+    /** Trees read back the files they were built from, have ids that
+     *  depend only on those files, and diff to just the files changed;
+     *  directories left empty disappear. */
+    @Test
+    public void treeTest() throws IOException {
+        repository();
+        HashMap<String, String> files = new HashMap<>();
+        for (String path : new String[] { "top.txt", "a/x.txt", "a/y.txt",
+                                          "a/b/z.txt", "c/d/e/w.txt" }) {
+            files.put(path, Utils.sha1("tree " + path));
+        }
+        String id = Tree.build(files);
+        HashMap<String, String> flat = new HashMap<>();
+        Tree.flatten(id, "", flat);
+        assertEquals(files, flat);
+        assertEquals(id, Tree.build(new TreeMap<>(files)));
+        assertNotEquals(id, Tree.build(new HashMap<>()));
+
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a/b/z.txt", Utils.sha1("tree changed"));
+        changes.put("a/new.txt", Utils.sha1("tree new"));
+        changes.put("c/d/e/w.txt", null);
+        changes.put("top.txt", null);
+        String updated = Tree.update(id, changes);
+        HashMap<String, String> expected = new HashMap<>(files);
+        for (String path : changes.keySet()) {
+            if (changes.get(path) == null) {
+                expected.remove(path);
+            } else {
+                expected.put(path, changes.get(path));
+            }
+        }
+        assertEquals(Tree.build(expected), updated);
+
+        HashMap<String, String> seen = new HashMap<>();
+        Tree.diff(id, updated, "", (path, oldID, newID) -> {
+            assertEquals(files.get(path), oldID);
+            assertEquals(changes.get(path), newID);
+            seen.put(path, newID);
+        });
+        assertEquals(changes, seen);
+        Tree.diff(updated, Tree.build(expected), "", (path, oldID, newID) ->
+            fail("equal trees differ at " + path));
+    }
+
+    /** Messages are found whole, by their words in any case and order,
+     *  and by substrings, oldest first, and the same after the index is
+     *  rebuilt from the commits. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        repository();
+        String a = graphCommit("msgidx Fix the parser", null, null).getSHA1();
+        String b = graphCommit("msgidx: fix parsers", null, null).getSHA1();
+        String c = graphCommit("MSGIDX parser fix, again", null, null)
+            .getSHA1();
+        for (int pass = 0; pass < 2; pass += 1) {
+            assertEquals(List.of(a),
+                         MessageIndex.exact("msgidx Fix the parser"));
+            assertTrue(MessageIndex.exact("msgidx fix the parser").isEmpty());
+            assertEquals(List.of(a, c),
+                         MessageIndex.words("PARSER msgidx fix"));
+            assertEquals(List.of(b), MessageIndex.words("parsers msgidx"));
+            assertTrue(MessageIndex.words("msgidx nothing").isEmpty());
+            assertTrue(MessageIndex.words(" ,; ").isEmpty());
+            assertEquals(List.of(a, b), MessageIndex.substring("msgidx"));
+            assertEquals(List.of(b), MessageIndex.substring("fix parsers"));
+            MessageIndex.LOG.delete();
+        }
+    }
+
+    /** Log options limit the count and the span of times shown, a bare
+     *  date standing for the whole day; bad options are reported. */
+    @Test
+    public void logFilterTest() {
+        LogFilter f = LogFilter.parse(new String[] {
+            "log", "--since", "2020-01-02", "--until", "2020-01-03", "-n", "2"
+        }, 1);
+        assertNotNull(f);
+        assertFalse(f.shows("2020-01-01 23:59:59"));
+        assertTrue(f.shows("2020-01-02 00:00:00"));
+        assertTrue(f.shows("2020-01-03 23:59:59"));
+        assertFalse(f.shows("2020-01-04 00:00:00"));
+        assertFalse(f.done("2020-01-03 12:00:00"));
+        f.shown();
+        f.shown();
+        assertTrue(f.done("2020-01-03 12:00:00"));
+
+        f = LogFilter.parse(new String[] {
+            "log", "--since", "2020-01-02 12:00:00" }, 1);
+        assertFalse(f.shows("2020-01-02 11:59:59"));
+        assertFalse(f.done("2020-01-02 12:00:00"));
+        assertTrue(f.done("2020-01-02 11:59:59"));
+        assertTrue(LogFilter.parse(new String[] { "log" }, 1)
+                   .shows("1970-01-01 00:00:00"));
+
+        String[][] bad = {
+            { "log", "-n" }, { "log", "-n", "-1" }, { "log", "-n", "x" },
+            { "log", "--since", "2020-1-2" }, { "log", "--until", "today" },
+            { "log", "--author", "me" },
+        };
+        String[] said = {
+            "Incorrect operands.", "Invalid count -1.", "Invalid count x.",
+            "Invalid date 2020-1-2.", "Invalid date today.",
+            "Incorrect operands.",
+        };
+        for (int i = 0; i < bad.length; i += 1) {
+            String[] args = bad[i];
+            assertEquals(said[i] + "\n",
+                         printed(() -> assertNull(LogFilter.parse(args, 1))));
+        }
+    }
+
+    /** Unified diffs show each change with three lines of context,
+     *  joining changes whose context would overlap, and mark new,
+     *  deleted, binary and unterminated files. */
+    @Test
+    public void unifiedDiffTest() throws IOException {
+        StringBuilder a = new StringBuilder(), b = new StringBuilder();
+        for (int i = 1; i <= 20; i += 1) {
+            a.append("l").append(i).append("\n");
+            b.append(i == 2 || i == 18 ? "L" : "l").append(i).append("\n");
+        }
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n"
+                     + "@@ -1,5 +1,5 @@\n l1\n-l2\n+L2\n l3\n l4\n l5\n"
+                     + "@@ -15,6 +15,6 @@\n l15\n l16\n l17\n-l18\n+L18\n"
+                     + " l19\n l20\n",
+                     unified(a.toString(), b.toString()));
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n"
+                     + "@@ -1,7 +1,7 @@\n l1\n-l2\n+L2\n l3\n l4\n l5\n"
+                     + "-l6\n+L6\n l7\n",
+                     unified("l1\nl2\nl3\nl4\nl5\nl6\nl7\n",
+                             "l1\nL2\nl3\nl4\nl5\nL6\nl7\n"));
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n@@ -1,2 +1,2 @@\n"
+                     + " x\n-y\n\\ No newline at end of file\n+y\n",
+                     unified("x\ny", "x\ny\n"));
+        assertEquals("diff --git a/f b/f\nnew file\n--- /dev/null\n"
+                     + "+++ b/f\n@@ -0,0 +1 @@\n+x\n", unified(null, "x\n"));
+        assertEquals("diff --git a/f b/f\ndeleted file\n--- a/f\n"
+                     + "+++ /dev/null\n@@ -1 +0,0 @@\n-x\n",
+                     unified("x\n", null));
+        assertEquals("diff --git a/f b/f\nBinary files a/f and b/f differ\n",
+                     unified("x\0y", "x\0z"));
+        assertEquals("diff --git a/f b/f\n", unified("same\n", "same\n"));
+    }
+
+    /** Returns the unified diff of file f from A to B, either of which
+     *  may be null for no file. */
+    private static String unified(String a, String b) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified("f", a == null ? null : ByteBuffer.wrap(a.getBytes()),
+                     b == null ? null : ByteBuffer.wrap(b.getBytes()), out);
+        return out.toString();
+    }
+
+    /** --stats reports the phases, I/O and commits of a command, and
+     *  --stats-json writes the same as JSON, which stays valid whatever
+     *  the command's arguments and the locale; commands run by another
+     *  count as part of it. */
+    @Test
+    public void statsTest() throws IOException {
+        repository();
+        String out = gitlet("--stats", "log");
+        assertTrue(out.contains("=== Stats: log ===\n"));
+        assertTrue(out.contains("\nload state "));
+        assertTrue(out.matches("(?s).*\n[0-9]+ commits decoded; commit "
+                               + "cache [0-9]+ hits, [0-9]+ misses.*"));
+
+        File json = new File("stats.json");
+        assertFalse(gitlet("--stats-json=stats.json", "status")
+                    .contains("=== Stats"));
+        String written = new String(Utils.readContents(json));
+        json.delete();
+        assertTrue(written.startsWith("{\"command\": \"status\", \"ms\": "));
+        assertTrue(written.contains("\"load state\": {\"calls\": "));
+        assertTrue(written.matches("(?s).*\"bytesRead\": [0-9]+, .*\n"));
+
+        Stats.reportTo("");
+        out = printed(() -> {
+            Stats.start("outer");
+            Stats.start("inner");
+            Stats.read(10);
+            Stats.finish();
+            Stats.read(5);
+            Stats.finish();
+        });
+        assertTrue(out.startsWith("=== Stats: outer ===\n"));
+        assertTrue(out.contains("1 files read (10 bytes)")
+                   || out.contains("2 files read (15 bytes)"));
+
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            gitlet("--stats-json=stats.json", "commit",
+                   "line1\tx\nline2\u0001\"");
+        } finally {
+            Locale.setDefault(locale);
+        }
+        written = new String(Utils.readContents(json));
+        json.delete();
+        assertTrue(written.startsWith("{\"command\": \"commit "
+            + "line1\\tx\\nline2\\u0001\\\"\", \"ms\": "));
+        assertTrue(written.matches("[ -~]*\n"));
+        assertFalse(written.matches("(?s).*[0-9],[0-9].*"));
+    }
+
+    /** Branch names too long to store are refused before anything is
+     *  changed. */
+    @Test
+    public void longBranchNameTest() throws IOException {
+        repository();
+        String name = "b".repeat(Utils.MAX_STRING + 1);
+        assertEquals("Branch name too long.\n", gitlet("branch", name));
+        assertFalse(StateJournal.load().branches.containsKey(name));
+        gitlet("branch", name.substring(1));
+        assertTrue(StateJournal.load().branches.containsKey(name.substring(1)));
+        gitlet("rm-branch", name.substring(1));
+    }
+
+    /** A file too large to merge line by line is merged as one conflict
+     *  between the whole of both sides. */
+    @Test
+    public void largeMergeTest() throws IOException {
+        repository();
+        File f = new File("large-merge.txt");
+        byte[] base = new byte[Merge.MAX_LINE_MERGE + 1];
+        for (int i = 0; i < base.length; i += 1) {
+            base[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+        }
+        Utils.writeContents(f, base);
+        gitlet("add", f.getPath());
+        gitlet("commit", "large merge base");
+        gitlet("branch", "large-merge");
+        base[0] = 'X';
+        Utils.writeContents(f, base);
+        gitlet("add", f.getPath());
+        gitlet("commit", "large merge ours");
+        gitlet("checkout", "large-merge");
+        base[0] = 'a';
+        base[base.length - 1] = 'Y';
+        Utils.writeContents(f, base);
+        gitlet("add", f.getPath());
+        gitlet("commit", "large merge theirs");
+        gitlet("checkout", "master");
+        assertTrue(gitlet("merge", "large-merge").contains("conflict"));
+        assertEquals(2L * (base.length + 1) + 29, f.length());
+        byte[] merged = Utils.readContents(f);
+        assertEquals("<<<<<<< HEAD\nX", new String(merged, 0, 14));
+        assertEquals("Y\n>>>>>>>\n",
+                     new String(merged, merged.length - 10, 10));
+        f.delete();
+        gitlet("rm", f.getPath());
+        gitlet("commit", "large merge done");
+    }
+
+    /** Returns the chunks into which Chunker splits CONTENTS. */
+    private static List<byte[]> chunks(byte[] contents) throws IOException {
+        ArrayList<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(contents));
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** True once the test repository has been made. */
+    private static boolean initialized;
+
+    /** Make sure there is a test repository in the current directory, or
+     *  skip the test.  The build runs the tests in target/test-repo;
+     *  run from anywhere else, tests that need a repository are skipped
+     *  rather than touch what is there.  The tests share one repository,
+     *  made afresh by the first of them, and each uses names of its own
+     *  so that none depends on another having run. */
+    private static void repository() throws IOException {
+        File dir = new File("").getAbsoluteFile();
+        assumeTrue(dir.getName().equals("test-repo"));
+        if (!initialized) {
+            for (File f : dir.listFiles()) {
+                delete(f);
+            }
+            gitlet("init");
+            initialized = true;
+        }
+    }
+
+    /** Returns what the command ARGS prints, run in this process. */
+    private static String gitlet(String... args) {
+        return printed(() -> Main.run(args));
+    }
+
+    /** Returns what RUN prints to the standard output. */
+    private static String printed(Runnable run) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true));
+        try {
+            run.run();
+        } finally {
+            System.setOut(stdout);
+        }
+        return out.toString();
+    }
+
+    /** Make the next load read the state from disk, as it would after
+     *  another process had changed it. */
+    private static void reload() throws IOException {
+        File f = StateJournal.JOURNAL;
+        Files.setLastModifiedTime(f.toPath(),
+            FileTime.fromMillis(f.lastModified() + 1000));
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File g : files) {
+                delete(g);
+            }
+        }
+        f.delete();
+    }
+
+}
@@ -1,15 +1,19 @@
 package gitlet;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -23,25 +27,20 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        long begin = Stats.begin();
+        MessageDigest md = ObjectId.digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
         }
+        String id = ObjectId.toHex(md.digest(), 0, ObjectId.SIZE);
+        Stats.end(Stats.HASH, begin);
+        return id;
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -50,6 +49,13 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, reading it as a
+     *  stream so that FILE need not fit in memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        return ObjectId.hash(file).toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -84,27 +90,103 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long begin = Stats.begin();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Stats.read(contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.READ_FILE, begin);
         }
     }
 
     /** Write the entire contents of BYTES to FILE, creating or overwriting
      *  it as needed.  Throws IllegalArgumentException in case of problems. */
     static void writeContents(File file, byte[] bytes) {
+        long begin = Stats.begin();
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
             Files.write(file.toPath(), bytes);
+            Stats.wrote(bytes.length);
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.WRITE_FILE, begin);
         }
     }
 
+    /** Return the contents of FILE as a read-only memory-mapped buffer, or
+     *  an empty buffer if FILE does not exist.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static ByteBuffer mapContents(File file) {
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        long begin = Stats.begin();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            Stats.read(ch.size());
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.READ_FILE, begin);
+        }
+    }
+
+    /** Return the LENGTH bytes of FILE starting at OFFSET as a read-only
+     *  memory-mapped buffer.  Throws IllegalArgumentException in case of
+     *  problems, including a LENGTH too large for a buffer. */
+    static ByteBuffer mapContents(File file, long offset, long length) {
+        long begin = Stats.begin();
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            Stats.read(length);
+            return ch.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Stats.end(Stats.READ_FILE, begin);
+        }
+    }
+
+    /* BINARY ENCODING */
+
+    /** Length in UTF-8 bytes of the longest string writeString can
+     *  write.  Paths are far shorter; names given by the user must be
+     *  checked with encodable before they are used. */
+    static final int MAX_STRING = 0xffff;
+
+    /** Returns true iff writeString can write S. */
+    static boolean encodable(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length <= MAX_STRING;
+    }
+
+    /** Write S to OUT as an unsigned 16-bit length followed by its
+     *  UTF-8 bytes. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING) {
+            throw new IllegalArgumentException("string too long to encode");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read a string written by writeString from the current position
+     *  of BUF. */
+    static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -152,4 +234,47 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the paths, relative to DIR and with "/" as separator, of
+     *  all plain files in DIR and its subdirectories other than .gitlet,
+     *  in lexicographic order. */
+    static List<String> plainFilenamesUnder(File dir) {
+        ArrayList<String> result = new ArrayList<>();
+        collectFilenames(dir, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add the paths of the plain files under DIR to RESULT, each
+     *  prefixed by PREFIX. */
+    private static void collectFilenames(File dir, String prefix,
+                                         List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File f = new File(dir, name);
+            if (f.isFile()) {
+                result.add(prefix + name);
+            } else if (f.isDirectory() && !name.equals(".gitlet")) {
+                collectFilenames(f, prefix + name + "/", result);
+            }
+        }
+    }
+
+    /** Deletes the working file FILE, if it exists, along with any
+     *  directories that become empty as a result, up to but not including
+     *  the working directory.  Returns true if FILE was deleted. */
+    static boolean deleteWorkingFile(File file) {
+        if (!file.delete()) {
+            return false;
+        }
+        File root = new File("").getAbsoluteFile();
+        File dir = file.getAbsoluteFile().getParentFile();
+        while (dir != null && !dir.equals(root) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Hashing: Utils.sha1 of contents in memory and of a file, and the
+ *  file ids of Commit.fileIDGenerator, which reads the whole file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int fileSize;
+
+    private byte[] contents;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        contents = new byte[fileSize];
+        new Random(42).nextBytes(contents);
+        file = File.createTempFile("gitlet-bench", ".bin");
+        Utils.writeContents(file, contents);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1((Object) contents);
+    }
+
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(file);
+    }
+
+    @Benchmark
+    public String fileIDGenerator() {
+        return Commit.fileIDGenerator(file);
+    }
+}
@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Walking the history with log and global-log, and listing the working
+ *  directory with plainFilenamesIn.  What the commands print is
+ *  discarded. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"100", "1000"})
+    int fileCount;
+
+    @Param({"100", "1000"})
+    int historyDepth;
+
+    private Workspace workspace;
+    private Gitlet gitlet;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        workspace = new Workspace(fileCount, 64, historyDepth);
+        gitlet = new Gitlet();
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+        workspace.delete();
+    }
+
+    @Benchmark
+    public void log() {
+        gitlet.log();
+    }
+
+    @Benchmark
+    public void globalLog() {
+        gitlet.globallog();
+    }
+
+    @Benchmark
+    public List<String> plainFilenamesIn() {
+        return Utils.plainFilenamesIn(new File("").getAbsoluteFile());
+    }
+}
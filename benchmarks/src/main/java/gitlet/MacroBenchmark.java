@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** Times whole gitlet commands, each run as its own process the way a
+ *  user runs them, against a copy of a template repository such as
+ *  RepoGenerator makes.  Options, of the form --NAME VALUE:
+ *    repo       the template repository (required)
+ *    runs       how many times to run the scenario, each on a fresh copy
+ *    edits      how many tracked files to change before add and commit
+ *    classpath  the classpath of the gitlet to time, so that builds can
+ *               be compared; by default, this one's
+ *    label      a name for the results, such as the build's commit
+ *    out        where to write the results; by default, standard output
+ *  A scenario times status, log, add and commit of EDITS changed files,
+ *  checkout of a branch and back, reset to an older commit and back, and
+ *  merge of a branch into master.  The results are JSON: for each
+ *  command, the time of every run in milliseconds and their median and
+ *  minimum, along with the label, the Java version and the shape the
+ *  template was generated with.
+ */
+public class MacroBenchmark {
+
+    /** The commands of a scenario, in the order they are timed. */
+    static final List<String> COMMANDS = Arrays.asList(
+        "status", "log", "add", "commit", "checkout", "reset", "merge");
+
+    private final LinkedHashMap<String, String> options =
+        new LinkedHashMap<>();
+    private final LinkedHashMap<String, List<Double>> times =
+        new LinkedHashMap<>();
+
+    /** Run the benchmark with the options in ARGS. */
+    public static void main(String... args) throws IOException {
+        new MacroBenchmark(args).run();
+    }
+
+    MacroBenchmark(String... args) {
+        options.put("repo", null);
+        options.put("runs", "5");
+        options.put("edits", "10");
+        options.put("classpath", System.getProperty("java.class.path"));
+        options.put("label", "");
+        options.put("out", null);
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2)
+                : args[i];
+            if (!options.containsKey(name) || i + 1 == args.length) {
+                throw new IllegalArgumentException(usage());
+            }
+            options.put(name, args[i + 1]);
+        }
+        if (options.get("repo") == null) {
+            throw new IllegalArgumentException(usage());
+        }
+        for (String command : COMMANDS) {
+            times.put(command, new ArrayList<>());
+        }
+    }
+
+    private String usage() {
+        return "usage: MacroBenchmark --repo DIR [--OPTION VALUE]..., "
+            + "with OPTIONs " + String.join(", ", options.keySet());
+    }
+
+    /** Run every scenario and report the results. */
+    void run() throws IOException {
+        Path template = new File(options.get("repo")).toPath();
+        int runs = Integer.parseInt(options.get("runs"));
+        for (int r = 0; r < runs; r += 1) {
+            Path copy = Files.createTempDirectory("gitlet-macro");
+            try {
+                copy(template, copy);
+                scenario(copy.toFile());
+            } finally {
+                delete(copy);
+            }
+        }
+        String json = results(template);
+        if (options.get("out") == null) {
+            System.out.print(json);
+        } else {
+            Utils.writeContents(new File(options.get("out")),
+                                json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Time one scenario in repository DIR.  Copying the repository
+     *  changes the inode numbers of its files, so an untimed status first
+     *  brings the stat index up to date, as it would be in regular use. */
+    private void scenario(File dir) throws IOException {
+        List<String> branches = branches(dir);
+        time(dir, "status", "status");
+        List<String> ids = commits(time(dir, "log", "log"));
+
+        ArrayList<String> add = new ArrayList<>(List.of("add"));
+        List<String> tracked = tracked(dir);
+        int edits = Math.min(Integer.parseInt(options.get("edits")),
+                             tracked.size());
+        for (int i = 0; i < edits; i += 1) {
+            String name = tracked.get(i * tracked.size() / edits);
+            Files.write(new File(dir, name).toPath(),
+                        ("macro benchmark edit\n")
+                        .getBytes(StandardCharsets.US_ASCII),
+                        StandardOpenOption.APPEND);
+            add.add(name);
+        }
+        time(dir, "add", add.toArray(new String[0]));
+        time(dir, "commit", "commit", "macro benchmark edit");
+
+        if (!branches.isEmpty()) {
+            time(dir, "checkout", "checkout", branches.get(0));
+            time(dir, "checkout", "checkout", "master");
+        }
+
+        if (ids.size() > 1) {
+            String head = commits(gitlet(dir, "log")).get(0);
+            time(dir, "reset", "reset", ids.get(ids.size() / 2));
+            time(dir, "reset", "reset", head);
+        }
+
+        if (!branches.isEmpty()) {
+            time(dir, "merge", "merge", branches.get(branches.size() - 1));
+        }
+    }
+
+    /** Run gitlet with ARGS in DIR, adding its time to those of COMMAND,
+     *  and return its output. */
+    private String time(File dir, String command, String... args)
+        throws IOException {
+        long start = System.nanoTime();
+        String out = gitlet(dir, args);
+        times.get(command).add((System.nanoTime() - start) / 1e6);
+        return out;
+    }
+
+    /** Returns the output of gitlet run with ARGS in DIR. */
+    private String gitlet(File dir, String... args) throws IOException {
+        ArrayList<String> command = new ArrayList<>(List.of(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp", options.get("classpath"), "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = p.getInputStream()) {
+            in.transferTo(out);
+        }
+        try {
+            if (p.waitFor() != 0) {
+                throw new IllegalStateException(String.join(" ", args)
+                    + " failed: " + out);
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp.getMessage());
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the ids of the commits listed by LOG, newest first. */
+    private static List<String> commits(String log) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (String line : log.split("\n")) {
+            if (line.startsWith("Commit ")) {
+                ids.add(line.substring("Commit ".length()).trim());
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the working files of DIR, which are all tracked, sorted. */
+    private List<String> tracked(File dir) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        Path root = dir.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile)
+                .map(p -> root.relativize(p).toString().replace('\\', '/'))
+                .filter(p -> !p.startsWith(".gitlet/"))
+                .forEach(result::add);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the branches of DIR other than the current one, as
+     *  listed by status. */
+    private List<String> branches(File dir) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        boolean listing = false;
+        for (String line : gitlet(dir, "status").split("\n")) {
+            if (line.startsWith("=== ")) {
+                listing = line.equals("=== Branches ===");
+            } else if (listing && !line.isEmpty() && !line.startsWith("*")) {
+                result.add(line.trim());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the results as JSON.  TEMPLATE is the repository timed. */
+    private String results(Path template) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"label\": ").append(quote(options.get("label")))
+            .append(",\n  \"java\": ")
+            .append(quote(System.getProperty("java.version")))
+            .append(",\n  \"repo\": ")
+            .append(quote(template.toAbsolutePath().toString()))
+            .append(",\n  \"runs\": ").append(options.get("runs"))
+            .append(",\n  \"edits\": ").append(options.get("edits"));
+        File shape = template.resolve(RepoGenerator.SHAPE.getPath()).toFile();
+        if (shape.isFile()) {
+            json.append(",\n  \"shape\": ")
+                .append(new String(Utils.readContents(shape),
+                                   StandardCharsets.UTF_8).trim());
+        }
+        json.append(",\n  \"commands\": {");
+        String sep = "\n";
+        for (Map.Entry<String, List<Double>> e : times.entrySet()) {
+            List<Double> ms = e.getValue();
+            if (ms.isEmpty()) {
+                continue;
+            }
+            ArrayList<Double> sorted = new ArrayList<>(ms);
+            Collections.sort(sorted);
+            int n = sorted.size();
+            double median = n % 2 == 1 ? sorted.get(n / 2)
+                : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2;
+            json.append(sep).append("    ").append(quote(e.getKey()))
+                .append(": {\"ms\": [");
+            for (int i = 0; i < n; i += 1) {
+                json.append(i == 0 ? "" : ", ")
+                    .append(String.format(Locale.ROOT, "%.2f", ms.get(i)));
+            }
+            json.append(String.format(Locale.ROOT,
+                                      "], \"median\": %.2f, \"min\": %.2f}",
+                                      median, sorted.get(0)));
+            sep = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /** Copy the repository at FROM, with its working files, to TO, leaving
+     *  out any daemon socket. */
+    private static void copy(Path from, Path to) throws IOException {
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                Path dest = to.resolve(from.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(dest);
+                } else if (Files.isRegularFile(p)) {
+                    Files.copy(p, dest, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+}
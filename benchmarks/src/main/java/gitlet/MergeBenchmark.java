@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Classifying the files of a merge with Merge.plan.  Of FILECOUNT files
+ *  at the split point, each side changes a tenth, deletes a hundredth
+ *  and adds a hundredth more, with some changes made on both sides. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+
+    @Param({"1000", "100000"})
+    int fileCount;
+
+    private final HashMap<String, String> current = new HashMap<>();
+    private final HashMap<String, String> split = new HashMap<>();
+    private final HashMap<String, String> given = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < fileCount; i += 1) {
+            String name = String.format("dir%03d/f%06d.txt", i % 100, i);
+            String id = Utils.sha1(name);
+            split.put(name, id);
+            current.put(name, i % 10 == 0 ? Utils.sha1(name, "ours") : id);
+            given.put(name, i % 10 == 3 || i % 50 == 0
+                      ? Utils.sha1(name, "theirs") : id);
+            if (i % 100 == 7) {
+                current.remove(name);
+            } else if (i % 100 == 9) {
+                given.remove(name);
+            }
+        }
+        for (int i = 0; i < fileCount / 100; i += 1) {
+            current.put("ours/n" + i, Utils.sha1("ours", "n" + i));
+            given.put("theirs/n" + i, Utils.sha1("theirs", "n" + i));
+        }
+    }
+
+    @Benchmark
+    public TreeMap<String, Integer> plan() {
+        return Merge.plan(current, split, given);
+    }
+}
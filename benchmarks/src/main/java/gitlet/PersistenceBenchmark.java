@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Writing and reading the repository state (GitletInfo) and commits.
+ *  The commit cache is disabled, so that every read decodes commits from
+ *  the pack, including the chain of parents their files are stored
+ *  against. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dgitlet.commitCache=0")
+public class PersistenceBenchmark {
+
+    @Param({"100", "1000"})
+    int fileCount;
+
+    @Param({"16", "256"})
+    int historyDepth;
+
+    private Workspace workspace;
+    private GitletInfo info;
+    private Commit tip;
+    private int next, written;
+
+    /** Makes the state look changed on disk before each load, so that it
+     *  is read rather than served from memory. */
+    @State(Scope.Thread)
+    public static class Changed {
+        private long touched;
+
+        @Setup(Level.Invocation)
+        public void touch() throws IOException {
+            touched += 1;
+            Files.setLastModifiedTime(StateJournal.JOURNAL.toPath(),
+                                      FileTime.fromMillis(touched * 1000));
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        workspace = new Workspace(fileCount, 64, historyDepth);
+        info = StateJournal.load();
+        for (String name : workspace.files) {
+            info.stagingArea.put(name, Utils.sha1(name));
+        }
+        StateJournal.checkpoint(info);
+        tip = CommitStore.get(workspace.commits.get(historyDepth - 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        workspace.delete();
+    }
+
+    @Benchmark
+    public void saveState() {
+        StateJournal.checkpoint(info);
+    }
+
+    @Benchmark
+    public GitletInfo loadState(Changed changed) {
+        return StateJournal.load();
+    }
+
+    @Benchmark
+    public Commit readCommit() {
+        next = (next + 1) % historyDepth;
+        return CommitStore.get(workspace.commits.get(next));
+    }
+
+    @Benchmark
+    public Commit writeCommit() {
+        written += 1;
+        Commit c = new Commit("benchmark commit " + written);
+        c.setParent(tip.getSHA1());
+        HashMap<String, String> files = new HashMap<>(tip.getFilesTracked());
+        files.put(workspace.files.get(written % fileCount),
+                  Utils.sha1("version " + written));
+        c.setFilesTracked(files);
+        c.setSHA1();
+        CommitStore.put(c);
+        tip = c;
+        return c;
+    }
+}
@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Generates a synthetic repository in the current directory, writing
+ *  blobs, trees and commits straight into the object and commit stores
+ *  rather than through the commands, so that histories of many thousands
+ *  of commits take minutes rather than hours.  The result is an ordinary
+ *  repository: master is checked out, the other branches hang off it,
+ *  and every commit is reachable from some branch.
+ *
+ *  The shape is given by options of the form --NAME VALUE:
+ *    files        the number of files in the first commit
+ *    dirs         the number of files per directory
+ *    commits      the number of commits after the first
+ *    branches     the number of branches besides master
+ *    merge-every  how often (in commits) a branch is merged into master;
+ *                 0 for never
+ *    churn        the number of files each commit changes
+ *    min-size, max-size
+ *                 the range of file sizes in bytes; sizes are spread
+ *                 evenly over its logarithm
+ *    seed         the seed of the random choices
+ *  Each commit also adds a file with probability 1/20 and deletes one
+ *  with probability 1/40.  The same options and seed always give the same
+ *  repository, down to the commit ids.  The options are recorded in
+ *  .gitlet/synthetic.json, which MacroBenchmark reads.
+ */
+public class RepoGenerator {
+
+    /** The options and their defaults, in the order they are reported. */
+    static final String[] OPTIONS = {
+        "files", "1000", "dirs", "100", "commits", "1000", "branches", "4",
+        "merge-every", "50", "churn", "5", "min-size", "64",
+        "max-size", "65536", "seed", "42",
+    };
+
+    /** Where the options used are recorded. */
+    static final File SHAPE = new File(".gitlet/synthetic.json");
+
+    /** Length of the lines of generated files. */
+    private static final int LINE = 48;
+
+    /** The time of the first commit; each later commit is a minute on. */
+    private static final long START = 1577836800000L;
+
+    /** Generate a repository in the current directory shaped by ARGS. */
+    public static void main(String... args) {
+        LinkedHashMap<String, Long> shape = parse(args);
+        if (new File(".gitlet").exists()) {
+            System.err.println("There is already a repository in "
+                + new File("").getAbsolutePath() + ".");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        new RepoGenerator(shape).generate();
+        System.out.printf("Generated %d commits in %.1f s.%n",
+                          shape.get("commits") + 1,
+                          (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Returns the options in ARGS over the defaults. */
+    static LinkedHashMap<String, Long> parse(String... args) {
+        LinkedHashMap<String, Long> shape = new LinkedHashMap<>();
+        for (int i = 0; i < OPTIONS.length; i += 2) {
+            shape.put(OPTIONS[i], Long.parseLong(OPTIONS[i + 1]));
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2)
+                : args[i];
+            if (!shape.containsKey(name) || i + 1 == args.length) {
+                throw new IllegalArgumentException("usage: RepoGenerator "
+                    + "[--OPTION VALUE]..., with OPTIONs "
+                    + String.join(", ", shape.keySet()));
+            }
+            shape.put(name, Long.parseLong(args[i + 1]));
+        }
+        return shape;
+    }
+
+    /** A line of development: a branch, or master. */
+    private static class Line {
+        final String name;
+        /** The line's latest commit. */
+        Commit head;
+        /** The changes made on the line since it was last merged, as for
+         *  Tree.update. */
+        final HashMap<String, String> pending = new HashMap<>();
+
+        Line(String name, Commit head) {
+            this.name = name;
+            this.head = head;
+        }
+    }
+
+    private final LinkedHashMap<String, Long> shape;
+    private final Random random;
+    private final int churn, minSize, maxSize;
+    /** The number of changes made to each file so far. */
+    private final HashMap<String, Integer> versions = new HashMap<>();
+    /** Every file made so far, in order. */
+    private final ArrayList<String> names = new ArrayList<>();
+    /** Commits made so far, for their times. */
+    private int made;
+    private final SimpleDateFormat format =
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    RepoGenerator(LinkedHashMap<String, Long> shape) {
+        this.shape = shape;
+        random = new Random(shape.get("seed"));
+        churn = shape.get("churn").intValue();
+        minSize = shape.get("min-size").intValue();
+        maxSize = Math.max(minSize, shape.get("max-size").intValue());
+    }
+
+    /** Write the repository. */
+    void generate() {
+        new File(".gitlet/blobs").mkdirs();
+        Line master = new Line("master",
+                               commit(null, null, new HashMap<>(),
+                                      "initial commit"));
+        int files = shape.get("files").intValue();
+        for (int i = 0; i < files; i += 1) {
+            String name = fileName();
+            master.pending.put(name, blob(name));
+        }
+        master.head = commit(master.head, null, master.pending,
+                             "add " + files + " files");
+        master.pending.clear();
+
+        ArrayList<Line> lines = new ArrayList<>();
+        lines.add(master);
+        for (int b = 1; b <= shape.get("branches"); b += 1) {
+            lines.add(new Line("branch" + b, master.head));
+        }
+        long mergeEvery = shape.get("merge-every");
+        for (long c = 1; c < shape.get("commits"); c += 1) {
+            if (mergeEvery > 0 && c % mergeEvery == 0 && lines.size() > 1) {
+                Line from = lines.get(1 + random.nextInt(lines.size() - 1));
+                master.head = commit(master.head, from.head, from.pending,
+                                     "Merged " + from.name + " into master.");
+                from.pending.clear();
+                continue;
+            }
+            Line line = lines.get(random.nextInt(lines.size()));
+            HashMap<String, String> changes = change(line.head);
+            line.pending.putAll(changes);
+            line.head = commit(line.head, null, changes,
+                               "change " + changes.size() + " files");
+        }
+
+        GitletInfo info = new GitletInfo();
+        info.setHead(master.head);
+        info.setCurrBranch("master");
+        for (Line line : lines) {
+            info.branches.put(line.name, line.head.getSHA1());
+        }
+        for (Map.Entry<String, String> e
+                 : master.head.getFilesTracked().entrySet()) {
+            ObjectStore.checkout(e.getValue(), new File(e.getKey()));
+        }
+        StatIndex.save();
+        StateJournal.checkpoint(info);
+        writeShape();
+    }
+
+    /** Returns the changes made by a commit on top of HEAD: CHURN files
+     *  changed, and perhaps one added and one deleted. */
+    private HashMap<String, String> change(Commit head) {
+        HashMap<String, String> changes = new HashMap<>();
+        for (int i = 0; i < churn; i += 1) {
+            String name = tracked(head);
+            if (name != null) {
+                changes.put(name, blob(name));
+            }
+        }
+        if (random.nextInt(20) == 0) {
+            String name = fileName();
+            changes.put(name, blob(name));
+        }
+        if (random.nextInt(40) == 0) {
+            String name = tracked(head);
+            if (name != null) {
+                changes.put(name, null);
+            }
+        }
+        return changes;
+    }
+
+    /** Returns a file tracked by HEAD, chosen at random, or null if a
+     *  few tries find none.  Files are drawn from all those ever made, of
+     *  which few are deleted, rather than from HEAD's, which would mean
+     *  listing them for every commit. */
+    private String tracked(Commit head) {
+        for (int tries = 0; tries < 8 && !names.isEmpty(); tries += 1) {
+            String name = names.get(random.nextInt(names.size()));
+            if (head.getFilesTracked().containsKey(name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the commit with parents PARENT and SECOND (either may be
+     *  null), made by applying CHANGES to PARENT's files, after storing
+     *  it. */
+    private Commit commit(Commit parent, Commit second,
+                          Map<String, String> changes, String message) {
+        HashMap<String, String> files = parent == null ? new HashMap<>()
+            : new HashMap<>(parent.getFilesTracked());
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                files.remove(e.getKey());
+            } else {
+                files.put(e.getKey(), e.getValue());
+            }
+        }
+        String time = format.format(new Date(START + 60000L * made));
+        made += 1;
+        Commit c = new Commit(null,
+                              parent == null ? null : parent.getSHA1(),
+                              second == null ? null : second.getSHA1(),
+                              Tree.update(parent == null ? null
+                                          : parent.getTree(), changes),
+                              time, message, files);
+        c.setSHA1();
+        CommitStore.put(c);
+        return c;
+    }
+
+    /** Returns the name of a new file. */
+    private String fileName() {
+        int n = names.size();
+        names.add(String.format("d%04d/f%06d.txt",
+                                n / shape.get("dirs").intValue(), n));
+        return names.get(n);
+    }
+
+    /** Returns the id of the next version of file NAME, after storing
+     *  it.  A file keeps its size, and each version rewrites one line of
+     *  the one before, as a small edit would. */
+    private String blob(String name) {
+        int version = versions.merge(name, 1, Integer::sum) - 1;
+        Random r = new Random(name.hashCode());
+        double log = Math.log(minSize)
+            + r.nextDouble() * (Math.log(maxSize) - Math.log(minSize));
+        byte[] contents = new byte[(int) Math.round(Math.exp(log))];
+        r.nextBytes(contents);
+        for (int i = 0; i < contents.length; i += 1) {
+            int x = contents[i] & 63;
+            contents[i] = (byte) (i % LINE == LINE - 1 ? '\n'
+                                  : x < 10 ? ' ' : 'a' + x % 26);
+        }
+        int lines = (contents.length + LINE - 1) / LINE;
+        for (int v = 1; v <= version; v += 1) {
+            byte[] edit = ("edit " + v + " ")
+                .getBytes(StandardCharsets.US_ASCII);
+            int at = new Random(name.hashCode() * 31L + v).nextInt(lines)
+                * LINE;
+            for (int i = 0; i < edit.length && at + i < contents.length
+                     && (at + i) % LINE != LINE - 1; i += 1) {
+                contents[at + i] = edit[i];
+            }
+        }
+        String id = Utils.sha1((Object) contents);
+        ObjectStore.store(contents, id);
+        return id;
+    }
+
+    /** Record the shape of the repository in SHAPE. */
+    private void writeShape() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Long> e : shape.entrySet()) {
+            json.append('"').append(e.getKey()).append("\": ")
+                .append(e.getValue()).append(", ");
+        }
+        json.append("\"branch-names\": [\"master\"");
+        for (int b = 1; b <= shape.get("branches"); b += 1) {
+            json.append(", \"branch").append(b).append('"');
+        }
+        json.append("]}\n");
+        Utils.writeContents(SHAPE,
+                            json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A scratch repository for benchmarks, built in the current directory
+ *  through the ordinary gitlet commands.  Gitlet keeps its repository in
+ *  .gitlet under the current directory, which a running JVM cannot
+ *  change, so benchmarks must be run from an empty directory; a
+ *  workspace refuses to start anywhere a repository already exists.
+ */
+class Workspace {
+
+    /** The names of the working files, in order. */
+    final List<String> files = new ArrayList<>();
+
+    /** Ids of the commits made, oldest first. */
+    final List<String> commits = new ArrayList<>();
+
+    private final Random random = new Random(42);
+
+    /** A repository of FILECOUNT files of FILESIZE bytes each and a
+     *  history of HISTORYDEPTH commits on master, each after the first
+     *  changing one file.  Output from the commands is discarded. */
+    Workspace(int fileCount, int fileSize, int historyDepth) {
+        if (new File(".gitlet").exists()) {
+            throw new IllegalStateException("there is a repository in "
+                + new File("").getAbsolutePath()
+                + "; run the benchmarks from an empty directory");
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        StateJournal.defer(true);
+        try {
+            Gitlet g = new Gitlet();
+            Main.run(g, "init");
+            for (int i = 0; i < fileCount; i += 1) {
+                String name = String.format("f%06d.txt", i);
+                files.add(name);
+                Utils.writeContents(new File(name), text(fileSize));
+            }
+            ArrayList<String> add = new ArrayList<>(files);
+            add.add(0, "add");
+            Main.run(g, add.toArray(new String[0]));
+            Main.run(g, "commit", "all files");
+            for (int d = 1; d < historyDepth; d += 1) {
+                String name = files.get(d % fileCount);
+                Utils.writeContents(new File(name), text(fileSize));
+                Main.run(g, "add", name);
+                Main.run(g, "commit", "change " + d + " to " + name);
+            }
+            StateJournal.flush();
+            StatIndex.save();
+            for (String id = StateJournal.load().head.getSHA1(); id != null;
+                 id = CommitStore.header(id).getParent()) {
+                commits.add(0, id);
+            }
+        } finally {
+            StateJournal.defer(false);
+            System.setOut(out);
+        }
+    }
+
+    /** Returns SIZE bytes of lines of random words. */
+    byte[] text(int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            int r = random.nextInt(64);
+            result[i] = (byte) (r == 0 ? '\n' : r < 10 ? ' ' : 'a' + r % 26);
+        }
+        return result;
+    }
+
+    /** Delete the repository and the working files. */
+    void delete() {
+        for (String name : files) {
+            new File(name).delete();
+        }
+        try (Stream<Path> paths = Files.walk(new File(".gitlet").toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}